@@ -0,0 +1,70 @@
+package com.myduchospital.plugins.secugenble;
+
+/**
+ * Power-of-two size classes of byte arrays borrowed by transfers and returned
+ * when they complete. A template of a few hundred bytes gets a 512 B array
+ * instead of an image-sized one, and nothing stays allocated once
+ * {@link #trim()} runs (idle timeout or onTrimMemory).
+ *
+ * Only full-class arrays obtained from {@link #acquire} are taken back;
+ * anything else passed to {@link #release} is left to the GC.
+ */
+class BufferPool {
+
+    private static final int MIN_SHIFT = 9;   // 512 B
+    private static final int MAX_SHIFT = 18;  // 256 KB
+    private static final int PER_CLASS = 2;
+
+    private final byte[][][] free = new byte[MAX_SHIFT - MIN_SHIFT + 1][PER_CLASS][];
+    private final int[] count = new int[MAX_SHIFT - MIN_SHIFT + 1];
+    private long pooledBytes = 0;
+
+    /** Returns an array of at least {@code size} bytes (its length is the size class). */
+    synchronized byte[] acquire(int size) {
+        int cls = classFor(size);
+        if (cls < 0) {
+            return new byte[size];
+        }
+        if (count[cls] > 0) {
+            byte[] buffer = free[cls][--count[cls]];
+            free[cls][count[cls]] = null;
+            pooledBytes -= buffer.length;
+            return buffer;
+        }
+        return new byte[1 << (cls + MIN_SHIFT)];
+    }
+
+    synchronized void release(byte[] buffer) {
+        if (buffer == null || Integer.bitCount(buffer.length) != 1) {
+            return;
+        }
+        int cls = Integer.numberOfTrailingZeros(buffer.length) - MIN_SHIFT;
+        if (cls < 0 || cls >= count.length || count[cls] == PER_CLASS) {
+            return;
+        }
+        free[cls][count[cls]++] = buffer;
+        pooledBytes += buffer.length;
+    }
+
+    /** Drops every pooled array; returns the number of bytes released. */
+    synchronized long trim() {
+        long released = pooledBytes;
+        for (int cls = 0; cls < count.length; cls++) {
+            for (int i = 0; i < count[cls]; i++) {
+                free[cls][i] = null;
+            }
+            count[cls] = 0;
+        }
+        pooledBytes = 0;
+        return released;
+    }
+
+    synchronized long getPooledBytes() {
+        return pooledBytes;
+    }
+
+    private static int classFor(int size) {
+        int shift = size <= (1 << MIN_SHIFT) ? MIN_SHIFT : 32 - Integer.numberOfLeadingZeros(size - 1);
+        return shift > MAX_SHIFT ? -1 : shift - MIN_SHIFT;
+    }
+}
@@ -0,0 +1,139 @@
+package com.myduchospital.plugins.secugenble;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+import com.getcapacitor.PluginCall;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * N captures issued back to back for one capture({burst}) call. The protocol
+ * thread starts frame k+1 as soon as frame k has transferred, while the image
+ * thread decodes and scores frame k; only the best frame is kept and sent
+ * across the bridge, together with every frame's score.
+ *
+ * {@link #startNext()} is called on the protocol thread only, {@link #offer}
+ * on the image thread only.
+ */
+class BurstCapture {
+
+    static final int MAX_FRAMES = 10;
+
+    final PluginCall call;
+    final int frames;
+    final long startTime = System.currentTimeMillis();
+
+    private final AtomicBoolean settled = new AtomicBoolean(false);
+
+    // Protocol thread
+    private int started = 1;
+
+    // Image thread
+    private final int[] scores;
+    private int scored = 0;
+    private int bestFrame = -1;
+    private byte[] bestPixels;
+    private int bestLength;
+    private int bestWidth;
+    private int bestHeight;
+    private boolean bestWSQ;
+    private int bestSize;
+    private QualityAnalyzer.Result bestQuality;
+
+    BurstCapture(PluginCall call, int frames) {
+        this.call = call;
+        this.frames = frames;
+        this.scores = new int[frames];
+    }
+
+    /** True (and counted) if another frame should be captured. */
+    boolean startNext() {
+        if (settled.get() || started >= frames) {
+            return false;
+        }
+        started++;
+        return true;
+    }
+
+    /**
+     * Record one finished frame. Only frames that decoded to grayscale can be
+     * the best; {@code pixels} is copied only when the frame beats the best so
+     * far, since the caller may reuse the array. Returns true once the last
+     * frame has been scored.
+     */
+    boolean offer(byte[] pixels, int length, int width, int height, boolean decoded, boolean isWSQ, int size,
+                  QualityAnalyzer.Result quality) {
+        int score = quality != null ? quality.score : -1;
+        int frame = scored++;
+        scores[frame] = score;
+        if (decoded && pixels != null && (bestFrame < 0 || score > scores[bestFrame])) {
+            bestFrame = frame;
+            if (bestPixels == null || bestPixels.length < length) {
+                bestPixels = new byte[length];
+            }
+            System.arraycopy(pixels, 0, bestPixels, 0, length);
+            bestLength = length;
+            bestWidth = width;
+            bestHeight = height;
+            bestWSQ = isWSQ;
+            bestSize = size;
+            bestQuality = quality;
+        }
+        return scored == frames;
+    }
+
+    int getScored() {
+        return scored;
+    }
+
+    /** False when no frame decoded. */
+    boolean hasBest() {
+        return bestFrame >= 0;
+    }
+
+    byte[] getBestPixels() {
+        return bestPixels;
+    }
+
+    int getBestLength() {
+        return bestLength;
+    }
+
+    int getBestWidth() {
+        return bestWidth;
+    }
+
+    int getBestHeight() {
+        return bestHeight;
+    }
+
+    boolean isBestWSQ() {
+        return bestWSQ;
+    }
+
+    int getBestSize() {
+        return bestSize;
+    }
+
+    QualityAnalyzer.Result getBestQuality() {
+        return bestQuality;
+    }
+
+    /** Only the first caller may resolve or reject the call. */
+    boolean settle() {
+        return settled.compareAndSet(false, true);
+    }
+
+    JSObject summary() {
+        JSArray scoreArray = new JSArray();
+        for (int i = 0; i < scored; i++) {
+            scoreArray.put(scores[i]);
+        }
+        JSObject burst = new JSObject();
+        burst.put("frames", frames);
+        burst.put("bestFrame", bestFrame);
+        burst.put("scores", scoreArray);
+        burst.put("totalMs", System.currentTimeMillis() - startTime);
+        return burst;
+    }
+}
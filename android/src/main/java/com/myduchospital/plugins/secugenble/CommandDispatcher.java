@@ -0,0 +1,35 @@
+package com.myduchospital.plugins.secugenble;
+
+import com.secugen.fmssdk.FMSResponse;
+
+/**
+ * Routes a decoded response header to the handler registered for its command
+ * byte. Lookup is a single array index; supporting a new command means
+ * registering a handler, not editing the receive path.
+ *
+ * Each handler owns its payload strategy: header-only results resolve at
+ * once, streaming commands (capture, template, DB records) set up the
+ * reassembly state for the chunks that follow.
+ */
+class CommandDispatcher {
+
+    interface Handler {
+        void onResponse(FMSResponse response, byte[] packet);
+    }
+
+    private final Handler[] handlers = new Handler[256];
+    private final Handler fallback;
+
+    CommandDispatcher(Handler fallback) {
+        this.fallback = fallback;
+    }
+
+    void register(byte command, Handler handler) {
+        handlers[command & 0xFF] = handler;
+    }
+
+    void dispatch(FMSResponse response, byte[] packet) {
+        Handler handler = handlers[response.command & 0xFF];
+        (handler != null ? handler : fallback).onResponse(response, packet);
+    }
+}
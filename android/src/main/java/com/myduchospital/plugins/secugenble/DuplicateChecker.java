@@ -0,0 +1,113 @@
+package com.myduchospital.plugins.secugenble;
+
+import android.content.Context;
+
+import com.getcapacitor.JSObject;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Matches a freshly enrolled template against the native gallery to catch the
+ * same finger being enrolled under a second ID.
+ *
+ * The gallery is cut into one slice per worker, each with its own
+ * {@link TemplateMatcher} (the FDxSDKPro library serializes calls per
+ * instance); all slices read the same gallery arena. The first slice to find
+ * a score at or above the threshold stops the others. Nothing blocks: the
+ * last slice to finish reports the result.
+ */
+class DuplicateChecker {
+
+    interface Callback {
+        void onChecked(Result result);
+    }
+
+    static final class Result {
+        Object duplicateId;
+        Object duplicateSubject;
+        int score = -1;
+        int compared;
+        long elapsedMs;
+
+        boolean isDuplicate() {
+            return score >= 0 && duplicateId != null;
+        }
+
+        JSObject toJSObject() {
+            JSObject check = new JSObject();
+            check.put("duplicate", isDuplicate());
+            if (isDuplicate()) {
+                check.put("duplicateOf", duplicateId);
+                check.put("subject", duplicateSubject);
+                check.put("score", score);
+            }
+            check.put("compared", compared);
+            check.put("elapsedMs", elapsedMs);
+            return check;
+        }
+    }
+
+    private final ExecutorService workers;
+    private final TemplateMatcher[] matchers;
+
+    private DuplicateChecker(ExecutorService workers, TemplateMatcher[] matchers) {
+        this.workers = workers;
+        this.matchers = matchers;
+    }
+
+    /** Returns null when a matcher cannot be initialized. */
+    static DuplicateChecker create(Context context, ExecutorService workers, int parallelism) {
+        TemplateMatcher[] matchers = new TemplateMatcher[Math.max(1, parallelism)];
+        for (int i = 0; i < matchers.length; i++) {
+            matchers[i] = TemplateMatcher.create(context);
+            if (matchers[i] == null) {
+                return null;
+            }
+        }
+        return new DuplicateChecker(workers, matchers);
+    }
+
+    /** {@code callback} runs on a worker thread, or inline for an empty gallery. */
+    void check(byte[] probe, TemplateGallery gallery, int threshold, Callback callback) {
+        long start = System.nanoTime();
+        Result result = new Result();
+        int slices = Math.min(matchers.length, gallery.size());
+        if (slices == 0) {
+            callback.onChecked(result);
+            return;
+        }
+
+        AtomicBoolean hit = new AtomicBoolean(false);
+        AtomicInteger compared = new AtomicInteger();
+        AtomicInteger remaining = new AtomicInteger(slices);
+        for (int s = 0; s < slices; s++) {
+            final TemplateMatcher matcher = matchers[s];
+            final int first = gallery.size() * s / slices;
+            final int last = gallery.size() * (s + 1) / slices;
+            workers.execute(() -> {
+                int count = 0;
+                try {
+                    for (int i = first; i < last && !hit.get(); i++) {
+                        int score = matcher.score(probe, gallery.arena(), gallery.offsetAt(i), gallery.lengthAt(i));
+                        count++;
+                        if (score >= threshold && hit.compareAndSet(false, true)) {
+                            result.duplicateId = gallery.idAt(i);
+                            result.duplicateSubject = gallery.subjectAt(gallery.subjectOf(i));
+                            result.score = score;
+                        }
+                    }
+                } finally {
+                    compared.addAndGet(count);
+                    // The last slice publishes; the atomics order the writes above
+                    if (remaining.decrementAndGet() == 0) {
+                        result.compared = compared.get();
+                        result.elapsedMs = (System.nanoTime() - start) / 1_000_000;
+                        callback.onChecked(result);
+                    }
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.myduchospital.plugins.secugenble;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+import com.getcapacitor.PluginCall;
+
+/**
+ * Register start -> register end -> get template for a list of user IDs,
+ * driven natively. Each step is issued from the completion of the previous
+ * one, so the reader never waits on a bridge round trip; the next user's
+ * register start goes out as soon as the last template byte has arrived.
+ *
+ * With a duplicate gallery, each template is checked against it while the
+ * reader already works on the next user; a template is reported (and the
+ * batch resolved) only once its check is done.
+ *
+ * Protocol thread only.
+ */
+class EnrollBatch {
+
+    static final int STEP_REGISTER_START = 0;
+    static final int STEP_REGISTER_END = 1;
+    static final int STEP_TEMPLATE = 2;
+
+    final PluginCall call;
+    final int[] userIds;
+    final boolean isAdmin;
+    final int timeoutMs;
+    final boolean stopOnError;
+    final TemplateGallery duplicateGallery; // null: no duplicate check
+    final int duplicateThreshold;
+    final long startTime = System.currentTimeMillis();
+
+    private int index = 0;
+    private int step = STEP_REGISTER_START;
+    private final JSArray enrolled = new JSArray();
+    private final JSArray failed = new JSArray();
+    private int duplicates = 0;
+    private int pendingChecks = 0;
+    private boolean readerDone = false;
+    private boolean settled = false;
+
+    EnrollBatch(PluginCall call, int[] userIds, boolean isAdmin, int timeoutMs, boolean stopOnError,
+                TemplateGallery duplicateGallery, int duplicateThreshold) {
+        this.call = call;
+        this.userIds = userIds;
+        this.isAdmin = isAdmin;
+        this.timeoutMs = timeoutMs;
+        this.stopOnError = stopOnError;
+        this.duplicateGallery = duplicateGallery;
+        this.duplicateThreshold = duplicateThreshold;
+    }
+
+    int userId() {
+        return userIds[index];
+    }
+
+    int index() {
+        return index;
+    }
+
+    int step() {
+        return step;
+    }
+
+    void setStep(int step) {
+        this.step = step;
+    }
+
+    /** Moves to the next user; false when the batch is done. */
+    boolean nextUser() {
+        step = STEP_REGISTER_START;
+        return ++index < userIds.length;
+    }
+
+    void addTemplate(JSObject entry, boolean duplicate) {
+        enrolled.put(entry);
+        if (duplicate) {
+            duplicates++;
+        }
+    }
+
+    void checkStarted() {
+        pendingChecks++;
+    }
+
+    void checkFinished() {
+        pendingChecks--;
+    }
+
+    /** No more reader steps; the batch still waits for running checks. */
+    void readerDone() {
+        readerDone = true;
+    }
+
+    /** True exactly once, when the call may be resolved. */
+    boolean completeIfDone() {
+        if (settled || !readerDone || pendingChecks > 0) {
+            return false;
+        }
+        settled = true;
+        return true;
+    }
+
+    /** True exactly once, for a call that has not been resolved yet. */
+    boolean settle() {
+        if (settled) {
+            return false;
+        }
+        settled = true;
+        return true;
+    }
+
+    void addFailure(String message) {
+        JSObject entry = new JSObject();
+        entry.put("userID", userId());
+        entry.put("message", message);
+        failed.put(entry);
+    }
+
+    JSObject toResult() {
+        JSObject result = new JSObject();
+        result.put("success", failed.length() == 0);
+        result.put("enrolled", enrolled);
+        result.put("failed", failed);
+        result.put("duplicates", duplicates);
+        result.put("totalMs", System.currentTimeMillis() - startTime);
+        return result;
+    }
+}
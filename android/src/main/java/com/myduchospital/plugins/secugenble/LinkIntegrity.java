@@ -0,0 +1,118 @@
+package com.myduchospital.plugins.secugenble;
+
+import com.getcapacitor.JSObject;
+
+/**
+ * Error accounting and recovery policy for the GATT link.
+ *
+ * A corrupt header or a failed chunk read is first answered by re-reading the
+ * characteristic, then (for commands that are safe to repeat) by re-sending
+ * the command, and only then by failing the operation. Both are far cheaper
+ * than sending the user back to the sensor.
+ *
+ * Each counter has a single writer (the protocol thread, or the image
+ * thread for payload errors) and is read from the plugin call thread, so
+ * plain volatile fields are enough.
+ */
+class LinkIntegrity {
+
+    static final int IGNORE = 0;
+    static final int REREAD = 1;
+    static final int RETRY_COMMAND = 2;
+    static final int GIVE_UP = 3;
+
+    static final int MAX_REREADS = 2;
+    static final int MAX_COMMAND_RETRIES = 1;
+
+    private volatile long headers;
+    private volatile long headerErrors;
+    private volatile long readErrors;
+    private volatile long payloadErrors;
+    private volatile long rereads;
+    private volatile long commandRetries;
+    private volatile long recovered;
+    private volatile long unrecovered;
+
+    // Per-operation recovery budget
+    private int rereadsLeft = MAX_REREADS;
+    private int retriesLeft = MAX_COMMAND_RETRIES;
+    private boolean recovering = false;
+
+    /** A new command was sent by the plugin: restore the recovery budget. */
+    void beginOperation() {
+        rereadsLeft = MAX_REREADS;
+        retriesLeft = MAX_COMMAND_RETRIES;
+        recovering = false;
+    }
+
+    void onHeaderValid() {
+        headers++;
+        onReadOk();
+    }
+
+    /** A characteristic read delivered data; consecutive re-reads start over. */
+    void onReadOk() {
+        if (recovering) {
+            recovered++;
+            recovering = false;
+        }
+        rereadsLeft = MAX_REREADS;
+    }
+
+    /**
+     * @param expected  an operation is waiting for this header
+     * @param retrySafe the last command may be sent again without side effects
+     */
+    int onHeaderCorrupt(boolean expected, boolean retrySafe) {
+        headers++;
+        headerErrors++;
+        if (!expected) {
+            return IGNORE;
+        }
+        return nextAction(retrySafe);
+    }
+
+    int onReadFailed(boolean retrySafe) {
+        readErrors++;
+        return nextAction(retrySafe);
+    }
+
+    void onPayloadRejected() {
+        payloadErrors++;
+    }
+
+    private int nextAction(boolean retrySafe) {
+        if (rereadsLeft > 0) {
+            rereadsLeft--;
+            rereads++;
+            recovering = true;
+            return REREAD;
+        }
+        if (retrySafe && retriesLeft > 0) {
+            retriesLeft--;
+            rereadsLeft = MAX_REREADS;
+            commandRetries++;
+            recovering = true;
+            return RETRY_COMMAND;
+        }
+        unrecovered++;
+        recovering = false;
+        return GIVE_UP;
+    }
+
+    JSObject toJSObject() {
+        long checked = headers;
+        long errors = headerErrors;
+        JSObject result = new JSObject();
+        result.put("headers", checked);
+        result.put("headerErrors", errors);
+        result.put("headerErrorRate", checked > 0 ? (double) errors / checked : 0);
+        result.put("readErrors", readErrors);
+        result.put("payloadErrors", payloadErrors);
+        result.put("rereads", rereads);
+        result.put("commandRetries", commandRetries);
+        result.put("recovered", recovered);
+        result.put("unrecovered", unrecovered);
+        return result;
+    }
+}
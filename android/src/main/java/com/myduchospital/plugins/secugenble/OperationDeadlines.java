@@ -0,0 +1,67 @@
+package com.myduchospital.plugins.secugenble;
+
+import android.os.Handler;
+
+/**
+ * One deadline per in-flight operation slot, scheduled on a single Handler.
+ *
+ * Arming a slot replaces its previous deadline; clearing it (when the reader
+ * answers) turns any already-posted expiry into a no-op via a generation check,
+ * so a late timer can never fire for a newer operation.
+ */
+class OperationDeadlines {
+
+    static final int CAPTURE = 0;
+    static final int COMMAND = 1;
+    static final int TEMPLATE = 2;
+    private static final int SLOTS = 3;
+
+    interface Listener {
+        void onDeadlineExpired(int slot);
+    }
+
+    private final Handler handler;
+    private final Listener listener;
+    private final Runnable[] pending = new Runnable[SLOTS];
+    private final long[] generation = new long[SLOTS];
+
+    OperationDeadlines(Handler handler, Listener listener) {
+        this.handler = handler;
+        this.listener = listener;
+    }
+
+    synchronized void arm(int slot, long timeoutMs) {
+        clear(slot);
+        if (timeoutMs <= 0) {
+            return;
+        }
+
+        final long armed = generation[slot];
+        Runnable expiry = () -> {
+            synchronized (OperationDeadlines.this) {
+                if (generation[slot] != armed) {
+                    return;
+                }
+                generation[slot]++;
+                pending[slot] = null;
+            }
+            listener.onDeadlineExpired(slot);
+        };
+        pending[slot] = expiry;
+        handler.postDelayed(expiry, timeoutMs);
+    }
+
+    synchronized void clear(int slot) {
+        generation[slot]++;
+        if (pending[slot] != null) {
+            handler.removeCallbacks(pending[slot]);
+            pending[slot] = null;
+        }
+    }
+
+    synchronized void clearAll() {
+        for (int slot = 0; slot < SLOTS; slot++) {
+            clear(slot);
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.myduchospital.plugins.secugenble;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Fixed-size ring buffer of raw GATT packets with nanosecond timestamps.
+ *
+ * Packet bytes are copied into one preallocated arena and described by
+ * parallel primitive arrays, so recording does not allocate. When either the
+ * arena or the record slots run out the oldest packets are overwritten.
+ *
+ * Trace file layout (big endian):
+ *   int magic "SGKT", int version, int count,
+ *   count x { long nanos, byte direction, int length, byte[length] }
+ */
+class PacketTrace {
+
+    static final byte DIR_OUT = 0;        // command written to the reader
+    static final byte DIR_IN_NOTIFY = 1;  // notification from the reader
+    static final byte DIR_IN_READ = 2;    // characteristic read result
+
+    private static final int MAGIC = 0x53474B54; // "SGKT"
+    private static final int VERSION = 1;
+    private static final int FILE_HEADER_SIZE = 12;
+    private static final int RECORD_HEADER_SIZE = 13;
+
+    private final byte[] arena;
+    private final long[] nanos;
+    private final int[] offsets;
+    private final int[] lengths;
+    private final byte[] directions;
+
+    private int head = 0;      // oldest record slot
+    private int count = 0;
+    private int writeOffset = 0;
+
+    PacketTrace(int arenaBytes, int maxPackets) {
+        arena = new byte[arenaBytes];
+        nanos = new long[maxPackets];
+        offsets = new int[maxPackets];
+        lengths = new int[maxPackets];
+        directions = new byte[maxPackets];
+    }
+
+    synchronized void record(byte direction, byte[] packet) {
+        if (packet == null) {
+            return;
+        }
+        record(direction, System.nanoTime(), packet, 0, packet.length);
+    }
+
+    synchronized void record(byte direction, long timestamp, byte[] packet, int offset, int length) {
+        if (length > arena.length) {
+            return;
+        }
+        if (writeOffset + length > arena.length) {
+            writeOffset = 0;
+        }
+
+        // Evict records whose bytes are about to be overwritten, or free a slot
+        while (count > 0 && (count == nanos.length || overlaps(head, writeOffset, length))) {
+            head = (head + 1) % nanos.length;
+            count--;
+        }
+
+        int slot = (head + count) % nanos.length;
+        System.arraycopy(packet, offset, arena, writeOffset, length);
+        nanos[slot] = timestamp;
+        offsets[slot] = writeOffset;
+        lengths[slot] = length;
+        directions[slot] = direction;
+        count++;
+        writeOffset += length;
+    }
+
+    private boolean overlaps(int slot, int start, int length) {
+        int s = offsets[slot];
+        int e = s + lengths[slot];
+        return s < start + length && start < e;
+    }
+
+    synchronized int size() {
+        return count;
+    }
+
+    synchronized void clear() {
+        head = 0;
+        count = 0;
+        writeOffset = 0;
+    }
+
+    /**
+     * Writes the trace to {@code file}. Only the copy into a compact snapshot
+     * holds the lock, so the protocol thread keeps recording during the IO.
+     */
+    void writeTo(File file) throws IOException {
+        snapshot().writeRecords(file);
+    }
+
+    private synchronized PacketTrace snapshot() {
+        int bytes = 0;
+        for (int i = 0; i < count; i++) {
+            bytes += lengths[(head + i) % nanos.length];
+        }
+        PacketTrace copy = new PacketTrace(Math.max(1, bytes), Math.max(1, count));
+        for (int i = 0; i < count; i++) {
+            int slot = (head + i) % nanos.length;
+            copy.record(directions[slot], nanos[slot], arena, offsets[slot], lengths[slot]);
+        }
+        return copy;
+    }
+
+    private synchronized void writeRecords(File file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 64 * 1024))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(count);
+            for (int i = 0; i < count; i++) {
+                int slot = (head + i) % nanos.length;
+                out.writeLong(nanos[slot]);
+                out.writeByte(directions[slot]);
+                out.writeInt(lengths[slot]);
+                out.write(arena, offsets[slot], lengths[slot]);
+            }
+        }
+    }
+
+    /**
+     * Loads a trace file into a trace sized to hold exactly its packets.
+     * Counts and lengths are checked against the file size, so a truncated or
+     * corrupt file fails with an IOException rather than a huge allocation.
+     */
+    static PacketTrace readFrom(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a packet trace: " + file);
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported trace version " + version);
+            }
+            int packets = in.readInt();
+            long remaining = file.length() - FILE_HEADER_SIZE;
+            if (packets < 0 || (long) packets * RECORD_HEADER_SIZE > remaining) {
+                throw new IOException("Corrupt trace: " + packets + " packets in " + file.length() + " bytes");
+            }
+            int arenaBytes = (int) Math.min(Integer.MAX_VALUE, file.length());
+            PacketTrace trace = new PacketTrace(arenaBytes, Math.max(1, packets));
+
+            byte[] scratch = new byte[512];
+            for (int i = 0; i < packets; i++) {
+                long timestamp = in.readLong();
+                byte direction = in.readByte();
+                int length = in.readInt();
+                remaining -= RECORD_HEADER_SIZE;
+                if (length < 0 || length > remaining) {
+                    throw new IOException("Corrupt trace: packet " + i + " length " + length);
+                }
+                remaining -= length;
+                if (scratch.length < length) {
+                    scratch = new byte[length];
+                }
+                in.readFully(scratch, 0, length);
+                trace.record(direction, timestamp, scratch, 0, length);
+            }
+            return trace;
+        }
+    }
+
+    // Accessors by position from the oldest packet, used by the replayer
+
+    synchronized long nanosAt(int index) {
+        return nanos[(head + index) % nanos.length];
+    }
+
+    synchronized byte directionAt(int index) {
+        return directions[(head + index) % nanos.length];
+    }
+
+    synchronized byte[] packetAt(int index) {
+        int slot = (head + index) % nanos.length;
+        byte[] packet = new byte[lengths[slot]];
+        System.arraycopy(arena, offsets[slot], packet, 0, lengths[slot]);
+        return packet;
+    }
+}
@@ -0,0 +1,65 @@
+package com.myduchospital.plugins.secugenble;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Feeds the packets of a {@link PacketTrace} back through the protocol engine,
+ * either with the recorded inter-packet timing or as fast as possible, to
+ * benchmark reassembly and decoding against real field traffic. Outbound
+ * commands are handed to the sink too, so it can track the session state;
+ * only inbound packets count towards the stats.
+ */
+class PacketTraceReplayer {
+
+    interface Sink {
+        void onPacket(byte direction, byte[] packet);
+    }
+
+    static final class Stats {
+        int packets;
+        long bytes;
+        long elapsedNanos;
+        long recordedNanos;
+    }
+
+    static Stats replay(PacketTrace trace, boolean realTime, Sink sink) {
+        int count = trace.size();
+
+        // Materialize packets up front so copying is not part of the measurement
+        byte[][] packets = new byte[count][];
+        byte[] directions = new byte[count];
+        long[] offsets = new long[count];
+        long first = count > 0 ? trace.nanosAt(0) : 0;
+        for (int i = 0; i < count; i++) {
+            packets[i] = trace.packetAt(i);
+            directions[i] = trace.directionAt(i);
+            offsets[i] = trace.nanosAt(i) - first;
+        }
+
+        Stats stats = new Stats();
+        stats.recordedNanos = count > 0 ? offsets[count - 1] : 0;
+
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            if (realTime) {
+                long wait;
+                while ((wait = start + offsets[i] - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(wait);
+                    if (Thread.interrupted()) {
+                        Thread.currentThread().interrupt();
+                        stats.elapsedNanos = System.nanoTime() - start;
+                        return stats;
+                    }
+                }
+            }
+            sink.onPacket(directions[i], packets[i]);
+            if (directions[i] == PacketTrace.DIR_OUT) {
+                continue;
+            }
+            stats.packets++;
+            stats.bytes += packets[i].length;
+        }
+        stats.elapsedNanos = System.nanoTime() - start;
+        return stats;
+    }
+}
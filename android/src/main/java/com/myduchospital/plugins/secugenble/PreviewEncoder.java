@@ -0,0 +1,154 @@
+package com.myduchospital.plugins.secugenble;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.util.Base64;
+
+import com.getcapacitor.PluginCall;
+
+import com.secugen.fmssdk.FMSBitmapPool;
+import com.secugen.fmssdk.FMSImage;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Downscales a decoded grayscale capture and compresses it to PNG/JPEG/WebP so
+ * the WebView receives a small ready-to-display image instead of raw pixels.
+ * Buffers and bitmaps are reused between captures; call from one thread only.
+ */
+class PreviewEncoder {
+
+    static final class Options {
+        int maxWidth;
+        int maxHeight;
+        String format;
+        int quality;
+        boolean includeImageData;
+
+        /** Returns null when the call does not ask for a native preview. */
+        static Options from(PluginCall call) {
+            String format = call.getString("previewFormat");
+            Integer maxWidth = call.getInt("previewWidth");
+            Integer maxHeight = call.getInt("previewHeight");
+            if (format == null && maxWidth == null && maxHeight == null) {
+                return null;
+            }
+
+            Options options = new Options();
+            options.format = normalizeFormat(format);
+            options.maxWidth = maxWidth != null ? maxWidth : 0;
+            options.maxHeight = maxHeight != null ? maxHeight : 0;
+            options.quality = Math.max(0, Math.min(100, call.getInt("previewQuality", 80)));
+            options.includeImageData = call.getBoolean("includeImageData", true);
+            return options;
+        }
+    }
+
+    static String normalizeFormat(String format) {
+        if (format == null) {
+            return "png";
+        }
+        switch (format.toLowerCase()) {
+            case "jpeg":
+            case "jpg":
+                return "jpeg";
+            case "webp":
+                return "webp";
+            default:
+                return "png";
+        }
+    }
+
+    static final class Result {
+        String base64;
+        String format;
+        int width;
+        int height;
+        int size;
+    }
+
+    private final FMSBitmapPool bitmapPool = new FMSBitmapPool();
+    private final FMSImage image = new FMSImage();
+    private final ByteArrayOutputStream output = new ByteArrayOutputStream(16 * 1024);
+    private byte[] scaled;
+
+    Result encode(byte[] gray, int width, int height, Options options) {
+        int targetWidth = width;
+        int targetHeight = height;
+
+        // Fit inside the requested box, keep aspect ratio, never upscale
+        if (options.maxWidth > 0 && targetWidth > options.maxWidth) {
+            targetHeight = Math.max(1, targetHeight * options.maxWidth / targetWidth);
+            targetWidth = options.maxWidth;
+        }
+        if (options.maxHeight > 0 && targetHeight > options.maxHeight) {
+            targetWidth = Math.max(1, targetWidth * options.maxHeight / targetHeight);
+            targetHeight = options.maxHeight;
+        }
+
+        byte[] pixels = gray;
+        if (targetWidth != width || targetHeight != height) {
+            int size = targetWidth * targetHeight;
+            if (scaled == null || scaled.length < size) {
+                scaled = new byte[size];
+            }
+            downscale(gray, width, height, scaled, targetWidth, targetHeight);
+            pixels = scaled;
+        }
+
+        image.set(pixels, targetWidth, targetHeight);
+        Bitmap bitmap = image.get(bitmapPool);
+
+        output.reset();
+        bitmap.compress(compressFormat(options.format), options.quality, output);
+
+        Result result = new Result();
+        result.base64 = Base64.encodeToString(output.toByteArray(), Base64.NO_WRAP);
+        result.format = options.format;
+        result.width = targetWidth;
+        result.height = targetHeight;
+        result.size = output.size();
+        return result;
+    }
+
+    void release() {
+        bitmapPool.clear();
+        scaled = null;
+    }
+
+    // Box filter: every destination pixel averages the source block it covers
+    private static void downscale(byte[] src, int srcWidth, int srcHeight, byte[] dst, int dstWidth, int dstHeight) {
+        int d = 0;
+        for (int y = 0; y < dstHeight; y++) {
+            int y0 = y * srcHeight / dstHeight;
+            int y1 = Math.max(y0 + 1, (y + 1) * srcHeight / dstHeight);
+            for (int x = 0; x < dstWidth; x++) {
+                int x0 = x * srcWidth / dstWidth;
+                int x1 = Math.max(x0 + 1, (x + 1) * srcWidth / dstWidth);
+                int sum = 0;
+                for (int sy = y0; sy < y1; sy++) {
+                    int row = sy * srcWidth;
+                    for (int sx = x0; sx < x1; sx++) {
+                        sum += src[row + sx] & 0xFF;
+                    }
+                }
+                dst[d++] = (byte) (sum / ((y1 - y0) * (x1 - x0)));
+            }
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private static Bitmap.CompressFormat compressFormat(String format) {
+        switch (format) {
+            case "jpeg":
+                return Bitmap.CompressFormat.JPEG;
+            case "webp":
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+                    return Bitmap.CompressFormat.WEBP_LOSSY;
+                }
+                return Bitmap.CompressFormat.WEBP;
+            default:
+                return Bitmap.CompressFormat.PNG;
+        }
+    }
+}
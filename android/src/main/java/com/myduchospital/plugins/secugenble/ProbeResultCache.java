@@ -0,0 +1,128 @@
+package com.myduchospital.plugins.secugenble;
+
+import com.getcapacitor.JSObject;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Short-lived results of match / matchTemplates, so a UI re-asking about the
+ * same probe (display, confirm, audit log) does not re-run the matcher.
+ *
+ * An entry is keyed by the probe bytes and a context hash covering everything
+ * else the result depends on: the candidate set's content (hashed from the raw
+ * call arguments, so a hit decodes nothing), threshold and matching options.
+ * A changed gallery therefore never hits an old entry; it simply ages out.
+ * Hits compare the probe bytes, not only their hash, and an exact shape of
+ * the candidate set (count and per-candidate lengths) next to the context
+ * hash, so a colliding candidate set does not get another set's result. Hits
+ * return a copy, so the stored result never changes.
+ */
+class ProbeResultCache {
+
+    static final long TTL_MS = 30_000;
+    private static final int MAX_ENTRIES = 16;
+
+    static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private static final class Entry {
+        final byte[] probe;
+        final long context;
+        final int[] shape;
+        final JSObject result;
+        final long expiresAt;
+
+        Entry(byte[] probe, long context, int[] shape, JSObject result, long expiresAt) {
+            this.probe = probe;
+            this.context = context;
+            this.shape = shape;
+            this.result = result;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    // Access order, eldest evicted beyond MAX_ENTRIES
+    private final Map<Long, Entry> entries = new LinkedHashMap<Long, Entry>(MAX_ENTRIES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+    private long hits;
+    private long misses;
+
+    static long hash(long seed, byte[] bytes, int offset, int length) {
+        long h = seed;
+        for (int i = offset; i < offset + length; i++) {
+            h ^= bytes[i] & 0xFF;
+            h *= FNV_PRIME;
+        }
+        return h;
+    }
+
+    static long hash(byte[] bytes) {
+        return hash(FNV_OFFSET, bytes, 0, bytes.length);
+    }
+
+    static long hash(long seed, String text) {
+        long h = seed;
+        for (int i = 0; i < text.length(); i++) {
+            h ^= text.charAt(i);
+            h *= FNV_PRIME;
+        }
+        return h;
+    }
+
+    static long mix(long h, long value) {
+        return (h ^ value) * FNV_PRIME;
+    }
+
+    /** A copy of the cached result the caller may modify, or null. */
+    synchronized JSObject get(byte[] probe, long context, int[] shape) {
+        long key = mix(hash(probe), context);
+        Entry entry = entries.get(key);
+        if (entry != null && entry.expiresAt <= System.currentTimeMillis()) {
+            entries.remove(key);
+            entry = null;
+        }
+        if (entry == null || entry.context != context || !Arrays.equals(entry.shape, shape)
+                || !Arrays.equals(entry.probe, probe)) {
+            misses++;
+            return null;
+        }
+        hits++;
+        JSObject copy = new JSObject();
+        for (Iterator<String> names = entry.result.keys(); names.hasNext(); ) {
+            String name = names.next();
+            copy.put(name, entry.result.opt(name));
+        }
+        return copy;
+    }
+
+    /** {@code probe} and {@code shape} must not be modified afterwards. */
+    synchronized void put(byte[] probe, long context, int[] shape, JSObject result) {
+        long now = System.currentTimeMillis();
+        for (Iterator<Entry> it = entries.values().iterator(); it.hasNext(); ) {
+            if (it.next().expiresAt <= now) {
+                it.remove();
+            }
+        }
+        entries.put(mix(hash(probe), context), new Entry(probe, context, shape, result, now + TTL_MS));
+    }
+
+    synchronized void clear() {
+        entries.clear();
+    }
+
+    synchronized JSObject toJSObject() {
+        JSObject stats = new JSObject();
+        stats.put("entries", entries.size());
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("ttlMs", TTL_MS);
+        return stats;
+    }
+}
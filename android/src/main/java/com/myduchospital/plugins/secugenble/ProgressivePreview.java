@@ -0,0 +1,82 @@
+package com.myduchospital.plugins.secugenble;
+
+import android.util.Base64;
+
+import com.getcapacitor.JSObject;
+
+/**
+ * Builds subsampled previews of a raw (non-WSQ) image while its rows are still
+ * arriving, so the operator gets placement feedback before the transfer ends.
+ * One instance lives for the plugin's lifetime; each capture reconfigures it,
+ * and the preview buffer only grows when a capture needs a bigger one.
+ */
+class ProgressivePreview {
+
+    private int everyRows;
+    private int step = 1;
+
+    private byte[] buffer;
+    private int width;
+    private int height;
+    private int lastRows;
+
+    /** Settings for the next capture; {@code everyRows <= 0} turns previews off. */
+    void configure(int everyRows, int step) {
+        this.everyRows = Math.max(0, everyRows);
+        this.step = Math.max(1, step);
+        this.width = 0;
+    }
+
+    boolean isEnabled() {
+        return everyRows > 0;
+    }
+
+    void start(int width, int height) {
+        if (!isEnabled()) {
+            this.width = 0;
+            return;
+        }
+        this.width = width;
+        this.height = height;
+        this.lastRows = 0;
+
+        int size = ((width + step - 1) / step) * ((height + step - 1) / step);
+        if (buffer == null || buffer.length < size) {
+            buffer = new byte[size];
+        }
+    }
+
+    /**
+     * Returns a captureProgress-style payload once another {@code everyRows} rows
+     * have been received, or null when no update is due yet.
+     */
+    JSObject update(byte[] image, int receivedBytes) {
+        if (width <= 0) {
+            return null;
+        }
+        int rows = Math.min(height, receivedBytes / width);
+        if (rows - lastRows < everyRows || rows <= 0) {
+            return null;
+        }
+        lastRows = rows;
+
+        int previewWidth = (width + step - 1) / step;
+        int previewRows = (rows + step - 1) / step;
+        int d = 0;
+        for (int y = 0; y < rows; y += step) {
+            int row = y * width;
+            for (int x = 0; x < width; x += step) {
+                buffer[d++] = image[row + x];
+            }
+        }
+
+        JSObject preview = new JSObject();
+        preview.put("rows", rows);
+        preview.put("totalRows", height);
+        preview.put("width", previewWidth);
+        preview.put("height", previewRows);
+        preview.put("fullHeight", (height + step - 1) / step);
+        preview.put("imageData", Base64.encodeToString(buffer, 0, d, Base64.NO_WRAP));
+        return preview;
+    }
+}
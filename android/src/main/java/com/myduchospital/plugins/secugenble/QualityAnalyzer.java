@@ -0,0 +1,179 @@
+package com.myduchospital.plugins.secugenble;
+
+import com.getcapacitor.JSObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Scores a decoded grayscale fingerprint from block statistics so bad
+ * placements can be rejected before template extraction and matching.
+ *
+ * The image is cut into BLOCK x BLOCK tiles. A tile counts as finger area when
+ * its variance shows ridge structure and it is not blank background. From those
+ * tiles we derive coverage (share of finger tiles), contrast (5th..95th
+ * percentile spread) and clarity (mean tile standard deviation). Bands of tile
+ * rows are processed in parallel on the shared worker pool.
+ *
+ * Per-band scratch arrays are reused, so one instance must only be used from
+ * one thread at a time.
+ */
+class QualityAnalyzer {
+
+    static final int BLOCK = 16;
+
+    private static final int FOREGROUND_MIN_VARIANCE = 100;
+    private static final int BACKGROUND_MIN_MEAN = 230;
+    private static final double CLARITY_FULL_STDDEV = 64.0;
+
+    static final class Result {
+        int score;
+        double coverage;
+        double contrast;
+        double clarity;
+
+        JSObject toJSObject() {
+            JSObject quality = new JSObject();
+            quality.put("score", score);
+            quality.put("coverage", coverage);
+            quality.put("contrast", contrast);
+            quality.put("clarity", clarity);
+            return quality;
+        }
+    }
+
+    private final ExecutorService workers;
+    private final int parallelism;
+
+    private int[] bandForeground;
+    private double[] bandStdDevSum;
+    private int[][] bandHistogram;
+    private final int[] histogram = new int[256];
+
+    QualityAnalyzer(ExecutorService workers, int parallelism) {
+        this.workers = workers;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    Result analyze(byte[] pixels, int width, int height) throws InterruptedException {
+        int blocksX = width / BLOCK;
+        int blocksY = height / BLOCK;
+        Result result = new Result();
+        if (blocksX == 0 || blocksY == 0 || pixels == null || pixels.length < width * height) {
+            return result;
+        }
+
+        int bands = Math.min(parallelism, blocksY);
+        ensureScratch(bands);
+
+        if (bands == 1) {
+            scanBand(pixels, width, blocksX, 0, blocksY, 0);
+        } else {
+            List<Callable<Void>> tasks = new ArrayList<>(bands);
+            for (int b = 0; b < bands; b++) {
+                final int band = b;
+                final int first = blocksY * b / bands;
+                final int last = blocksY * (b + 1) / bands;
+                tasks.add(() -> {
+                    scanBand(pixels, width, blocksX, first, last, band);
+                    return null;
+                });
+            }
+            for (Future<Void> future : workers.invokeAll(tasks)) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("Quality band failed", e.getCause());
+                }
+            }
+        }
+
+        int foreground = 0;
+        double stdDevSum = 0;
+        Arrays.fill(histogram, 0);
+        for (int b = 0; b < bands; b++) {
+            foreground += bandForeground[b];
+            stdDevSum += bandStdDevSum[b];
+            int[] h = bandHistogram[b];
+            for (int i = 0; i < 256; i++) {
+                histogram[i] += h[i];
+            }
+        }
+
+        result.coverage = (double) foreground / (blocksX * blocksY);
+        if (foreground > 0) {
+            int pixelCount = foreground * BLOCK * BLOCK;
+            int low = percentile(histogram, pixelCount / 20);
+            int high = percentile(histogram, pixelCount - pixelCount / 20);
+            result.contrast = (high - low) / 255.0;
+            result.clarity = Math.min(1.0, (stdDevSum / foreground) / CLARITY_FULL_STDDEV);
+        }
+        result.score = (int) Math.round(100 * (0.4 * result.coverage + 0.3 * result.contrast + 0.3 * result.clarity));
+        return result;
+    }
+
+    private void ensureScratch(int bands) {
+        if (bandForeground == null || bandForeground.length < bands) {
+            bandForeground = new int[bands];
+            bandStdDevSum = new double[bands];
+            bandHistogram = new int[bands][256];
+        }
+    }
+
+    private void scanBand(byte[] pixels, int width, int blocksX, int firstBlockRow, int lastBlockRow, int band) {
+        int[] hist = bandHistogram[band];
+        Arrays.fill(hist, 0);
+        int foreground = 0;
+        double stdDevSum = 0;
+        int area = BLOCK * BLOCK;
+
+        for (int by = firstBlockRow; by < lastBlockRow; by++) {
+            for (int bx = 0; bx < blocksX; bx++) {
+                int origin = by * BLOCK * width + bx * BLOCK;
+                long sum = 0;
+                long sumSq = 0;
+                for (int y = 0; y < BLOCK; y++) {
+                    int row = origin + y * width;
+                    for (int x = 0; x < BLOCK; x++) {
+                        int v = pixels[row + x] & 0xFF;
+                        sum += v;
+                        sumSq += v * v;
+                    }
+                }
+                int mean = (int) (sum / area);
+                int variance = (int) (sumSq / area - (long) mean * mean);
+                if (variance < FOREGROUND_MIN_VARIANCE || mean >= BACKGROUND_MIN_MEAN) {
+                    continue;
+                }
+
+                foreground++;
+                stdDevSum += Math.sqrt(variance);
+                for (int y = 0; y < BLOCK; y++) {
+                    int row = origin + y * width;
+                    for (int x = 0; x < BLOCK; x++) {
+                        hist[pixels[row + x] & 0xFF]++;
+                    }
+                }
+            }
+        }
+
+        bandForeground[band] = foreground;
+        bandStdDevSum[band] = stdDevSum;
+    }
+
+    private static int percentile(int[] histogram, int rank) {
+        int seen = 0;
+        for (int i = 0; i < 256; i++) {
+            seen += histogram[i];
+            if (seen > rank) {
+                return i;
+            }
+        }
+        return 255;
+    }
+}
@@ -0,0 +1,68 @@
+package com.myduchospital.plugins.secugenble;
+
+import com.secugen.fmssdk.FMSAPI;
+import com.secugen.fmssdk.FMSError;
+
+/**
+ * "&lt;operation&gt; failed (Error: 0xNN)" messages, indexed by command byte and
+ * error code. Known reader errors are built once at class load; anything else
+ * is formatted on first use and cached.
+ */
+final class ResponseMessages {
+
+    private static final String[] OPERATIONS = new String[256];
+    private static final String[][] FAILURES = new String[256][];
+
+    static {
+        OPERATIONS[FMSAPI.CMD_FP_CAPTURE & 0xFF] = "Capture";
+        OPERATIONS[SecuGenBLEPlugin.CMD_GET_TEMPLATE & 0xFF] = "Get template";
+        OPERATIONS[FMSAPI.CMD_FP_REGISTER_START & 0xFF] = "Register start";
+        OPERATIONS[FMSAPI.CMD_FP_REGISTER_END & 0xFF] = "Register end";
+        OPERATIONS[FMSAPI.CMD_FP_VERIFY & 0xFF] = "Verify";
+        OPERATIONS[FMSAPI.CMD_FP_IDENTIFY & 0xFF] = "Identify";
+        OPERATIONS[FMSAPI.CMD_FP_DELETE & 0xFF] = "Delete";
+        OPERATIONS[SecuGenBLEPlugin.CMD_SET_POWER_OFF_TIME & 0xFF] = "Set power off time";
+        OPERATIONS[FMSAPI.CMD_GET_VERSION & 0xFF] = "Get version";
+        OPERATIONS[FMSAPI.CMD_DB_GET_RECCOUNT & 0xFF] = "Get record count";
+        OPERATIONS[FMSAPI.CMD_DB_ADD_REC & 0xFF] = "Add record";
+        OPERATIONS[FMSAPI.CMD_DB_GET_REC & 0xFF] = "Get record";
+        OPERATIONS[FMSAPI.CMD_DB_GET_FIRSTREC & 0xFF] = "Get first record";
+        OPERATIONS[FMSAPI.CMD_DB_GET_NEXTREC & 0xFF] = "Get next record";
+        OPERATIONS[FMSAPI.CMD_DB_DELETE_ALL & 0xFF] = "Delete all records";
+        OPERATIONS[FMSAPI.CMD_FP_AUTO_IDENTIFY_START & 0xFF] = "Auto identify";
+        OPERATIONS[FMSAPI.CMD_FP_AUTO_IDENTIFY_STOP & 0xFF] = "Auto identify stop";
+
+        for (int command = 0; command < OPERATIONS.length; command++) {
+            if (OPERATIONS[command] == null) {
+                continue;
+            }
+            FAILURES[command] = new String[256];
+            for (FMSError error : FMSError.values()) {
+                if (error != FMSError.OTHER) {
+                    FAILURES[command][error.code & 0xFF] = format(OPERATIONS[command], error.code);
+                }
+            }
+        }
+    }
+
+    private ResponseMessages() {
+    }
+
+    static String failure(byte command, byte error) {
+        String[] row = FAILURES[command & 0xFF];
+        if (row == null) {
+            return format("Command 0x" + Integer.toHexString(command & 0xFF), error);
+        }
+        String message = row[error & 0xFF];
+        if (message == null) {
+            // Benign race: two threads may both format the same string
+            message = format(OPERATIONS[command & 0xFF], error);
+            row[error & 0xFF] = message;
+        }
+        return message;
+    }
+
+    private static String format(String operation, byte error) {
+        return String.format("%s failed (Error: 0x%02X)", operation, error);
+    }
+}
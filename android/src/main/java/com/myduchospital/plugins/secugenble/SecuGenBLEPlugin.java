@@ -13,11 +13,16 @@ import android.bluetooth.BluetoothProfile;
 import android.bluetooth.le.BluetoothLeScanner;
 import android.bluetooth.le.ScanCallback;
 import android.bluetooth.le.ScanResult;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
+import android.content.res.Configuration;
 import android.content.pm.PackageManager;
 import android.os.Build;
 import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
 import android.util.Base64;
 import android.util.Log;
 
@@ -33,21 +38,23 @@ import com.getcapacitor.annotation.Permission;
 import com.getcapacitor.annotation.PermissionCallback;
 
 import com.secugen.fmssdk.FMSAPI;
+import com.secugen.fmssdk.FMSData;
+import com.secugen.fmssdk.FMSCaptureArchive;
 import com.secugen.fmssdk.FMSImage;
 import com.secugen.fmssdk.FMSImageSave;
 import com.secugen.fmssdk.FMSHeader;
-import com.secugen.fmssdk.FMSData;
+import com.secugen.fmssdk.FMSError;
+import com.secugen.fmssdk.FMSResponse;
 import com.secugen.u20_bt_android_ble_demo.DeviceControlActivity;
 
-import android.hardware.usb.UsbManager;
-
-import SecuGen.FDxSDKPro.JSGFPLib;
-import SecuGen.FDxSDKPro.SGFDxErrorCode;
-import SecuGen.FDxSDKPro.SGFDxSecurityLevel;
-
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 @CapacitorPlugin(
     name = "SecuGenBLE",
@@ -69,9 +76,20 @@ public class SecuGenBLEPlugin extends Plugin {
     private static final String WRITE_CHARACTERISTIC_UUID = "00002BB2-0000-1000-8000-00805F9B34FB";
     private static final String NOTIFY_CHARACTERISTIC_UUID = "00002BB1-0000-1000-8000-00805F9B34FB";
     private static final String CLIENT_CHARACTERISTIC_CONFIG = "00002902-0000-1000-8000-00805f9b34fb";
-    private static final byte CMD_GET_TEMPLATE = 0x40;
-    private static final byte CMD_SET_POWER_OFF_TIME = (byte) 0xF7;
+    static final byte CMD_GET_TEMPLATE = 0x40;
+    static final byte CMD_SET_POWER_OFF_TIME = (byte) 0xF7;
     private static final int REQUEST_MTU_SIZE = 301;
+    private static final int DEFAULT_CAPTURE_TIMEOUT_MS = 30000;
+    private static final int DEFAULT_COMMAND_TIMEOUT_MS = 20000;
+    private static final long IDLE_TRIM_MS = 60000;
+    // How long the header of an abandoned capture may still be expected
+    private static final long ABANDONED_HEADER_WINDOW_MS = 750;
+    private static final String ERROR_TIMEOUT = "TIMEOUT";
+    private static final String ERROR_CANCELLED = "CANCELLED";
+    private static final String ERROR_BUSY = "BUSY";
+    private static final String ERROR_CHECKSUM = "CHECKSUM";
+    private static final String ERROR_READ_FAILED = "READ_FAILED";
+    private static final String ERROR_IMAGE_GEOMETRY = "IMAGE_GEOMETRY";
     
     // Bluetooth components
     private BluetoothAdapter bluetoothAdapter;
@@ -81,16 +99,42 @@ public class SecuGenBLEPlugin extends Plugin {
     private BluetoothGattCharacteristic notifyCharacteristic;
     
     // Connection state
-    private boolean isConnected = false;
+    private volatile boolean isConnected = false;
     private boolean isScanning = false;
     private String connectedDeviceAddress;
-    private Handler mainHandler;
+
+    // Session work (GATT callbacks, commands, deadlines) runs here, off the UI looper
+    private HandlerThread protocolThread;
+    private Handler protocolHandler;
     
     // SecuGen SDK data management for capture
     private byte[] imageBuffer;
     private int remainingDataSize = 0;
     private int totalReceiveSize = 0;
-    private boolean isCapturingImage = false;
+
+    // Which operation currently owns the link (capture / template / command)
+    private final SessionState session = new SessionState();
+
+    // Header checksum / read error accounting and recovery (see LinkIntegrity)
+    private final LinkIntegrity integrity = new LinkIntegrity();
+    private byte[] lastCommand;
+
+    // Reused for every header / payload chunk on the GATT thread
+    private final FMSResponse response = new FMSResponse();
+    private final FMSData payloadView = new FMSData();
+
+    // Response header handlers indexed by command byte (see registerResponseHandlers)
+    private final CommandDispatcher dispatcher = new CommandDispatcher(this::onUnhandledResponse);
+
+    // Chunk read strategy (see setTransferMode) and its throughput per mode
+    private volatile boolean pipelinedReads = false;
+    private boolean readInFlight = false;
+    private boolean streamedPayload = false;
+    private final TransferMeter transferMeter = new TransferMeter();
+    // Leftovers of abandoned captures that are still read from the reader and discarded
+    private int drainBytes = 0;
+    private int abandonedCaptureHeaders = 0;
+    private long abandonedHeaderDeadline = 0;
     private long captureStartTime = 0;
     private boolean isCurrentCaptureWSQ = false;
 
@@ -99,6 +143,10 @@ public class SecuGenBLEPlugin extends Plugin {
     private boolean captureFullSize = true;
     private int captureWidth = 300;
     private int captureHeight = 400;
+    private PreviewEncoder.Options capturePreviewOptions;
+    private final ProgressivePreview progressivePreview = new ProgressivePreview();
+    private int captureMinQuality = 0;
+    private final FMSImage rawLayout = new FMSImage();
 
     // Generic command tracking (register/verify/identify)
     private PluginCall currentCommandCall;
@@ -108,22 +156,154 @@ public class SecuGenBLEPlugin extends Plugin {
     private byte[] templateBuffer;
     private int remainingTemplateSize = 0;
     private int totalTemplateSize = 0;
-    private boolean isReceivingTemplate = false;
     private PluginCall currentTemplateCall;
+
+    // Native register/template pipeline (see enrollBatch), protocol thread only
+    private EnrollBatch pendingEnroll;
     
     // Scan results
     private List<BluetoothDevice> scannedDevices = new ArrayList<>();
 
     // FDxSDKPro matching library (used for template matching on Android)
-    private JSGFPLib sgfplibMatcher;
+    private TemplateMatcher templateMatcher;
+
+    // Gallery-wide duplicate check for enrollBatch, one matcher per worker
+    private DuplicateChecker duplicateChecker;
+
+    // Minutiae-count prefilter in front of 1:N matching (see setPrefilter)
+    private final TemplatePrefilter prefilter = new TemplatePrefilter();
+
+    // Recent match / matchTemplates results by probe and candidate set
+    private final ProbeResultCache probeCache = new ProbeResultCache();
+
+    // Native gallery for captureAndIdentify, replaced as a whole by setGallery
+    private volatile TemplateGallery gallery = TemplateGallery.EMPTY;
+
+    // Pending fused capture + identify request; protocol thread, taken when the transfer completes
+    private volatile IdentifyRequest pendingIdentify;
+
+    // Pending capture({burst}) call, resolved with the best frame
+    private volatile BurstCapture pendingBurst;
+
+    private static final class IdentifyRequest {
+        final PluginCall call;
+        final TemplateGallery candidates;
+        final int threshold;
+        final int aggregation;
+
+        IdentifyRequest(PluginCall call, TemplateGallery candidates, int threshold, int aggregation) {
+            this.call = call;
+            this.candidates = candidates;
+            this.threshold = threshold;
+            this.aggregation = aggregation;
+        }
+    }
+
+    // Decode / preview work runs here so the protocol thread is never blocked
+    private ExecutorService imageExecutor;
+    private final PreviewEncoder previewEncoder = new PreviewEncoder();
+
+    // Transfer buffers, borrowed per image/template and trimmed when idle
+    private final BufferPool bufferPool = new BufferPool();
+    private final Runnable idleTrim = () -> trimMemory("idle");
+    private final ComponentCallbacks2 memoryCallbacks = new ComponentCallbacks2() {
+        @Override
+        public void onTrimMemory(int level) {
+            if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+                trimMemory("onTrimMemory(" + level + ")");
+            }
+        }
+
+        @Override
+        public void onLowMemory() {
+            trimMemory("onLowMemory");
+        }
+
+        @Override
+        public void onConfigurationChanged(Configuration newConfig) {
+        }
+    };
+
+    // CPU-bound work split across cores (quality blocks, ...)
+    private ExecutorService workerPool;
+    private int workerCount;
+    private QualityAnalyzer qualityAnalyzer;
+
+    // Optional audit archive of received captures (see configureArchive)
+    private volatile FMSCaptureArchive captureArchive;
+
+    // Raw GATT packet recorder (see startTrace / dumpTrace / replayTrace)
+    private volatile PacketTrace packetTrace;
+    private volatile PacketTrace lastTrace;
+
+    // Packets nobody handled; kept natively, only sent as dataReceived events on opt-in
+    private final PacketTrace strayPackets = new PacketTrace(64 * 1024, 512);
+    private volatile int debugEventEvery = 0; // 0 = off, N = every Nth stray packet
+    private int debugEventCounter = 0;
+
+    // Deadlines for capture / command / template operations waiting on the reader
+    private OperationDeadlines deadlines;
 
     @Override
     public void load() {
         super.load();
-        this.mainHandler = new Handler(Looper.getMainLooper());
+        this.protocolThread = new HandlerThread("SecuGenBLE-protocol", Process.THREAD_PRIORITY_DISPLAY);
+        protocolThread.start();
+        this.protocolHandler = new Handler(protocolThread.getLooper());
+        this.deadlines = new OperationDeadlines(protocolHandler, this::onDeadlineExpired);
+        this.imageExecutor = Executors.newSingleThreadExecutor();
+        this.workerCount = Math.max(1, Runtime.getRuntime().availableProcessors());
+        this.workerPool = Executors.newFixedThreadPool(workerCount);
+        this.qualityAnalyzer = new QualityAnalyzer(workerPool, workerCount);
+        registerResponseHandlers();
+        getContext().registerComponentCallbacks(memoryCallbacks);
         initializeBluetooth();
     }
 
+    @Override
+    protected void handleOnDestroy() {
+        deadlines.clearAll();
+        protocolHandler.removeCallbacks(idleTrim);
+        protocolThread.quitSafely();
+        getContext().unregisterComponentCallbacks(memoryCallbacks);
+        if (imageExecutor != null) {
+            imageExecutor.shutdownNow();
+        }
+        if (workerPool != null) {
+            workerPool.shutdownNow();
+        }
+        if (captureArchive != null) {
+            captureArchive.stop();
+            captureArchive = null;
+        }
+        super.handleOnDestroy();
+    }
+
+    /** Return a transfer buffer and (re)start the idle countdown. */
+    private void releaseBuffer(byte[] buffer) {
+        bufferPool.release(buffer);
+        protocolHandler.removeCallbacks(idleTrim);
+        protocolHandler.postDelayed(idleTrim, IDLE_TRIM_MS);
+    }
+
+    /** Run {@code task} on the protocol thread, inline when already there. */
+    private void onProtocol(Runnable task) {
+        if (Looper.myLooper() == protocolHandler.getLooper()) {
+            task.run();
+        } else {
+            protocolHandler.post(task);
+        }
+    }
+
+    private void trimMemory(String reason) {
+        long released = bufferPool.trim();
+        // The encoder's bitmaps belong to the image thread
+        if (!imageExecutor.isShutdown()) {
+            imageExecutor.execute(previewEncoder::release);
+        }
+        Log.d(TAG, "Trimmed " + released + " pooled bytes (" + reason + ")");
+    }
+
     private void initializeBluetooth() {
         final BluetoothManager bluetoothManager = 
             (BluetoothManager) getContext().getSystemService(Context.BLUETOOTH_SERVICE);
@@ -238,7 +418,7 @@ public class SecuGenBLEPlugin extends Plugin {
 
         // Auto-stop scan after timeout
         int timeoutMs = call.getInt("timeoutMs", 10000);
-        mainHandler.postDelayed(() -> {
+        protocolHandler.postDelayed(() -> {
             if (isScanning) {
                 bluetoothLeScanner.stopScan(scanCallback);
                 isScanning = false;
@@ -292,6 +472,10 @@ public class SecuGenBLEPlugin extends Plugin {
         BluetoothGattCallback gattCallback = new BluetoothGattCallback() {
             @Override
             public void onConnectionStateChange(BluetoothGatt gatt, int status, int newState) {
+                onProtocol(() -> handleConnectionStateChange(gatt, newState));
+            }
+
+            private void handleConnectionStateChange(BluetoothGatt gatt, int newState) {
                 if (newState == BluetoothProfile.STATE_CONNECTED) {
                     Log.d(TAG, "Connected to GATT server, requesting MTU");
                     isConnected = true;
@@ -308,6 +492,7 @@ public class SecuGenBLEPlugin extends Plugin {
                 } else if (newState == BluetoothProfile.STATE_DISCONNECTED) {
                     Log.d(TAG, "Disconnected from GATT server");
                     isConnected = false;
+                    abortPendingOperations("Device disconnected", "DISCONNECTED");
                     connectedDeviceAddress = null;
                     bluetoothGatt = null;
                     
@@ -319,48 +504,64 @@ public class SecuGenBLEPlugin extends Plugin {
 
             @Override
             public void onServicesDiscovered(BluetoothGatt gatt, int status) {
-                if (status == BluetoothGatt.GATT_SUCCESS) {
-                    Log.d(TAG, "Services discovered");
-                    setupCharacteristics(gatt);
-                }
+                // The characteristics set up here are used by the protocol thread
+                onProtocol(() -> {
+                    if (status == BluetoothGatt.GATT_SUCCESS) {
+                        Log.d(TAG, "Services discovered");
+                        setupCharacteristics(gatt);
+                    }
+                });
             }
 
             @Override
             public void onMtuChanged(BluetoothGatt gatt, int mtu, int status) {
-                if (status == BluetoothGatt.GATT_SUCCESS) {
-                    Log.d(TAG, "MTU changed to " + mtu + ", discovering services");
-                    gatt.discoverServices();
-                } else {
-                    Log.d(TAG, "MTU change failed with status: " + status);
-                    gatt.discoverServices();
-                }
+                onProtocol(() -> {
+                    if (status == BluetoothGatt.GATT_SUCCESS) {
+                        Log.d(TAG, "MTU changed to " + mtu + ", discovering services");
+                        gatt.discoverServices();
+                    } else {
+                        Log.d(TAG, "MTU change failed with status: " + status);
+                        gatt.discoverServices();
+                    }
+                });
             }
 
             @Override
             public void onCharacteristicRead(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
+                // The characteristic's value is replaced by the next packet, so take it now
+                byte[] value = characteristic.getValue();
+                onProtocol(() -> handleCharacteristicRead(value, status));
+            }
+
+            private void handleCharacteristicRead(byte[] value, int status) {
+                readInFlight = false;
                 if (status == BluetoothGatt.GATT_SUCCESS) {
-                    handleDataReceived(characteristic.getValue());
+                    if (pipelinedReads && value != null && expectsMorePayloadAfter(value.length)) {
+                        // Queue the next read before this chunk is processed
+                        requestNextChunk();
+                    }
+                    PacketTrace trace = packetTrace;
+                    if (trace != null) {
+                        trace.record(PacketTrace.DIR_IN_READ, value);
+                    }
+                    integrity.onReadOk();
+                    handleDataReceived(value);
                 } else {
                     Log.d(TAG, "onCharacteristicRead failed with status: " + status);
+                    recoverFailedRead(status);
                 }
             }
 
             @Override
             public void onCharacteristicChanged(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic) {
                 byte[] value = characteristic.getValue();
-
-                // Mirror SDK behavior: a 12-byte packet starting with 'N' (0x4E)
-                // is a notify trigger, and we must explicitly read the data
-                if (value != null
-                        && value.length == FMSAPI.PACKET_HEADER_SIZE
-                        && value[0] == 0x4E
-                        && notifyCharacteristic != null
-                        && bluetoothGatt != null) {
-                    requestNextChunk();
-                    return;
-                }
-
-                handleDataReceived(value);
+                onProtocol(() -> {
+                    PacketTrace trace = packetTrace;
+                    if (trace != null) {
+                        trace.record(PacketTrace.DIR_IN_NOTIFY, value);
+                    }
+                    handleNotification(value);
+                });
             }
         };
 
@@ -391,6 +592,7 @@ public class SecuGenBLEPlugin extends Plugin {
         
         isConnected = false;
         connectedDeviceAddress = null;
+        onProtocol(() -> abortPendingOperations("Device disconnected", "DISCONNECTED"));
         
         JSObject result = new JSObject();
         result.put("success", true);
@@ -412,245 +614,689 @@ public class SecuGenBLEPlugin extends Plugin {
             return;
         }
 
-        // For performance and BLE throughput, always request half-size image (150x200)
-        // and enable WSQ compression like iOS implementation
-        boolean fullSize = false;
-
-        this.captureFullSize = fullSize;
-        captureWidth = 150;
-        captureHeight = 200;
-
-        // Reset capture state
-        remainingDataSize = 0;
-        totalReceiveSize = 0;
-        isCapturingImage = false;
-        isCurrentCaptureWSQ = true; // we will request WSQ image
-        captureStartTime = System.currentTimeMillis();
-        currentCaptureCall = null; // iOS: capture call is resolved immediately, image delivered via events
-
-        // Allocate buffer large enough for max image size (header + data)
-        int maxSize = FMSAPI.PACKET_HEADER_SIZE + FMSImage.IMG_SIZE_MAX + 1;
-        if (imageBuffer == null || imageBuffer.length < maxSize) {
-            imageBuffer = new byte[maxSize];
-        }
-
-        // Build capture command using FMSAPI with WSQ enabled - always half-size
-        byte sizeFlag = FMSAPI.IMAGE_SIZE_HALF;
-        byte[] captureCommand = FMSAPI.cmdFPCaptureUseWSQ(sizeFlag);
-        sendCommand(captureCommand);
+        int burstFrames = Math.min(call.getInt("burst", 1), BurstCapture.MAX_FRAMES);
+        onProtocol(() -> {
+            if (!claimCapture(call)) {
+                return;
+            }
+            pendingIdentify = null;
+            pendingBurst = burstFrames > 1 ? new BurstCapture(call, burstFrames) : null;
+            startCapture(call);
+            if (burstFrames > 1) {
+                // Resolved with the best frame once every frame has been scored
+                return;
+            }
 
-        // Mirror iOS behavior: resolve immediately with capture parameters;
-        // the actual image will be delivered via captureProgress/captureComplete events.
-        JSObject result = new JSObject();
-        result.put("success", true);
-        result.put("message", "Capture initiated");
-        result.put("width", captureWidth);
-        result.put("height", captureHeight);
-        result.put("fullSize", captureFullSize);
-        call.resolve(result);
+            // Mirror iOS behavior: resolve immediately with capture parameters;
+            // the actual image will be delivered via captureProgress/captureComplete events.
+            JSObject result = new JSObject();
+            result.put("success", true);
+            result.put("message", "Capture initiated");
+            result.put("width", captureWidth);
+            result.put("height", captureHeight);
+            result.put("fullSize", captureFullSize);
+            call.resolve(result);
+        });
     }
 
+    /**
+     * Capture, extract a template and identify it against the supplied candidates
+     * (or the native gallery) without the image ever crossing the bridge.
+     * Resolves with the best id, score and per-stage timings.
+     */
     @PluginMethod
-    public void register(PluginCall call) {
+    public void captureAndIdentify(PluginCall call) {
         if (!isConnected) {
             call.reject("Device not connected");
             return;
         }
-
-        Integer userId = call.getInt("userID");
-        boolean isAdmin = call.getBoolean("isAdmin", false);
-        if (userId == null) {
-            call.reject("userID is required");
+        if (!initializeMatcher()) {
+            call.reject("FDxSDKPro matcher initialization failed");
             return;
         }
 
-        byte[] cmd = FMSAPI.cmdFPRegisterStart(userId, isAdmin);
-        currentCommandCall = call;
-        currentCommandCode = FMSAPI.CMD_FP_REGISTER_START;
-        sendCommand(cmd);
-    }
-
-    @PluginMethod
-    public void completeRegistration(PluginCall call) {
-        if (!isConnected) {
-            call.reject("Device not connected");
+        JSArray candidatesArray = call.getArray("candidates");
+        TemplateGallery candidates = candidatesArray != null
+                ? TemplateGallery.fromCandidates(candidatesArray)
+                : gallery;
+        if (candidates.size() == 0) {
+            call.reject("No candidates: pass candidates or call setGallery first");
             return;
         }
 
-        byte[] cmd = FMSAPI.cmdFPRegisterEnd();
-        currentCommandCall = call;
-        currentCommandCode = FMSAPI.CMD_FP_REGISTER_END;
-        sendCommand(cmd);
+        onProtocol(() -> {
+            if (!claimCapture(call)) {
+                return;
+            }
+            pendingIdentify = new IdentifyRequest(call, candidates, call.getInt("threshold", 80),
+                    SubjectIdentifier.aggregation(call.getString("aggregate", "max")));
+            pendingBurst = null;
+            startCapture(call);
+        });
     }
 
+    /**
+     * Enable or disable the on-device capture archive (app files dir).
+     */
     @PluginMethod
-    public void verify(PluginCall call) {
-        if (!isConnected) {
-            call.reject("Device not connected");
-            return;
+    public void configureArchive(PluginCall call) {
+        boolean enabled = call.getBoolean("enabled", true);
+
+        FMSCaptureArchive previous = captureArchive;
+        captureArchive = null;
+        if (previous != null) {
+            previous.stop();
         }
 
-        Integer userId = call.getInt("userID");
-        if (userId == null) {
-            call.reject("userID is required");
-            return;
+        JSObject result = new JSObject();
+        if (enabled) {
+            int maxSegmentBytes = call.getInt("maxSegmentBytes", 8 * 1024 * 1024);
+            int maxSegments = call.getInt("maxSegments", 16);
+            File directory = new File(getContext().getFilesDir(), "capture-archive");
+
+            FMSCaptureArchive archive = new FMSCaptureArchive(directory, maxSegmentBytes, maxSegments);
+            archive.start();
+            captureArchive = archive;
+            result.put("directory", directory.getAbsolutePath());
+        }
+        if (previous != null) {
+            result.put("written", previous.getWrittenCount());
+            result.put("dropped", previous.getDroppedCount());
         }
 
-        byte[] cmd = FMSAPI.cmdFPVerify(userId);
-        currentCommandCall = call;
-        currentCommandCode = FMSAPI.CMD_FP_VERIFY;
-        sendCommand(cmd);
+        result.put("success", true);
+        result.put("enabled", enabled);
+        call.resolve(result);
     }
 
+    /**
+     * Start recording every inbound and outbound GATT packet into a ring buffer.
+     */
     @PluginMethod
-    public void matchTemplates(PluginCall call) {
-        JSObject result = new JSObject();
+    public void startTrace(PluginCall call) {
+        int capacityBytes = call.getInt("capacityBytes", 2 * 1024 * 1024);
+        int maxPackets = call.getInt("maxPackets", 16 * 1024);
+        packetTrace = new PacketTrace(capacityBytes, maxPackets);
 
-        String probeBase64 = call.getString("probeTemplate");
-        JSArray candidatesArray = call.getArray("candidates");
-        int threshold = call.getInt("threshold", 80);
+        JSObject result = new JSObject();
+        result.put("success", true);
+        result.put("message", "Packet trace started");
+        call.resolve(result);
+    }
 
-        if (probeBase64 == null || probeBase64.isEmpty()) {
-            call.reject("probeTemplate is required");
-            return;
+    @PluginMethod
+    public void stopTrace(PluginCall call) {
+        PacketTrace trace = packetTrace;
+        packetTrace = null;
+        if (trace != null) {
+            lastTrace = trace;
         }
-        if (candidatesArray == null || candidatesArray.length() == 0) {
-            call.reject("candidates array is required");
+
+        JSObject result = new JSObject();
+        result.put("success", true);
+        result.put("packets", trace != null ? trace.size() : 0);
+        call.resolve(result);
+    }
+
+    /**
+     * Write the current (or last stopped) trace to a binary file in the cache dir.
+     */
+    @PluginMethod
+    public void dumpTrace(PluginCall call) {
+        PacketTrace trace = packetTrace != null ? packetTrace : lastTrace;
+        if (trace == null) {
+            call.reject("No packet trace recorded");
             return;
         }
 
-        if (!initializeMatcher()) {
-            call.reject("FDxSDKPro matcher initialization failed");
+        File directory = new File(getContext().getCacheDir(), "packet-traces");
+        if (!directory.exists() && !directory.mkdirs()) {
+            call.reject("Failed to create trace directory");
             return;
         }
-
-        byte[] probeTemplate;
+        File file = new File(directory, "trace-" + System.currentTimeMillis() + ".sgkt");
         try {
-            probeTemplate = Base64.decode(probeBase64, Base64.DEFAULT);
-        } catch (IllegalArgumentException e) {
-            call.reject("Invalid base64 for probeTemplate");
+            trace.writeTo(file);
+        } catch (IOException e) {
+            call.reject("Failed to write trace: " + e.getMessage());
             return;
         }
 
-        int bestScore = -1;
-        Object bestUserId = null;
-
-        JSArray scoresArray = new JSArray();
-
-        for (int i = 0; i < candidatesArray.length(); i++) {
-            Object item = candidatesArray.opt(i);
-            if (!(item instanceof JSObject)) {
-                continue;
-            }
-
-            JSObject candidate = (JSObject) item;
-            Object userId = candidate.opt("id");
-            String templateBase64 = candidate.optString("template", null);
+        JSObject result = new JSObject();
+        result.put("success", true);
+        result.put("path", file.getAbsolutePath());
+        result.put("packets", trace.size());
+        call.resolve(result);
+    }
 
-            if (templateBase64 == null || templateBase64.isEmpty()) {
-                continue;
-            }
+    /**
+     * Feed a dumped trace back through the protocol engine (disconnected only)
+     * at recorded or maximum speed and report the achieved throughput.
+     */
+    @PluginMethod
+    public void replayTrace(PluginCall call) {
+        String path = call.getString("path");
+        if (path == null) {
+            call.reject("path is required");
+            return;
+        }
+        if (isConnected) {
+            call.reject("Disconnect before replaying a trace");
+            return;
+        }
+        boolean realTime = "recorded".equals(call.getString("speed", "max"));
 
-            byte[] candidateTemplate;
+        // Replayed packets go through the same thread as live ones
+        protocolHandler.post(() -> {
+            PacketTrace trace;
             try {
-                candidateTemplate = Base64.decode(templateBase64, Base64.DEFAULT);
-            } catch (IllegalArgumentException e) {
-                continue;
+                trace = PacketTrace.readFrom(new File(path));
+            } catch (IOException e) {
+                call.reject("Failed to read trace: " + e.getMessage());
+                return;
             }
 
-            boolean[] matchedFlag = new boolean[1];
-            int[] scoreHolder = new int[1];
+            captureStartTime = System.currentTimeMillis();
+            session.reset();
+            drainBytes = 0;
+            abandonedCaptureHeaders = 0;
+
+            PacketTraceReplayer.Stats stats = PacketTraceReplayer.replay(trace, realTime, (direction, packet) -> {
+                if (direction == PacketTrace.DIR_OUT) {
+                    // Recorded capture command: put the session where capture() would
+                    if (packet.length == FMSAPI.PACKET_HEADER_SIZE
+                            && new FMSHeader(packet).pkt_command == FMSAPI.CMD_FP_CAPTURE) {
+                        session.reset();
+                        session.claim(SessionState.CAPTURE_AWAITING_HEADER);
+                    }
+                } else if (direction == PacketTrace.DIR_IN_NOTIFY) {
+                    handleNotification(packet);
+                } else {
+                    handleDataReceived(packet);
+                }
+            });
 
-            long matchError = sgfplibMatcher.MatchTemplate(probeTemplate, candidateTemplate,
-                    SGFDxSecurityLevel.SL_NORMAL, matchedFlag);
-            if (matchError != SGFDxErrorCode.SGFDX_ERROR_NONE) {
-                continue;
-            }
+            double seconds = stats.elapsedNanos / 1e9;
+            JSObject result = new JSObject();
+            result.put("success", true);
+            result.put("packets", stats.packets);
+            result.put("bytes", stats.bytes);
+            result.put("elapsedMs", stats.elapsedNanos / 1_000_000.0);
+            result.put("recordedMs", stats.recordedNanos / 1_000_000.0);
+            result.put("throughputKBps", seconds > 0 ? stats.bytes / 1024.0 / seconds : 0);
+            result.put("illegalTransitions", session.getIllegalTransitions());
+            session.reset();
+            call.resolve(result);
+        });
+    }
 
-            long scoreError = sgfplibMatcher.GetMatchingScore(probeTemplate, candidateTemplate, scoreHolder);
-            if (scoreError != SGFDxErrorCode.SGFDX_ERROR_NONE) {
-                continue;
-            }
+    @PluginMethod
+    public void getSessionState(PluginCall call) {
+        JSObject result = new JSObject();
+        result.put("state", SessionState.name(session.get()));
+        result.put("illegalTransitions", session.getIllegalTransitions());
+        call.resolve(result);
+    }
 
-            int score = scoreHolder[0];
+    /**
+     * dataReceived events are off by default. sampleEvery = N forwards every
+     * Nth stray packet; all of them stay in the native ring (getStrayPackets).
+     */
+    @PluginMethod
+    public void setDebugEvents(PluginCall call) {
+        boolean enabled = call.getBoolean("enabled", false);
+        int sampleEvery = Math.max(1, call.getInt("sampleEvery", 1));
+        debugEventEvery = enabled ? sampleEvery : 0;
 
-            JSObject scoreEntry = new JSObject();
-            scoreEntry.put("id", userId);
-            scoreEntry.put("score", score);
-            scoresArray.put(scoreEntry);
+        JSObject result = new JSObject();
+        result.put("success", true);
+        result.put("enabled", enabled);
+        result.put("sampleEvery", sampleEvery);
+        call.resolve(result);
+    }
 
-            if (score > bestScore) {
-                bestScore = score;
-                bestUserId = userId;
+    @PluginMethod
+    public void getStrayPackets(PluginCall call) {
+        long now = System.nanoTime();
+        JSArray packets = new JSArray();
+        synchronized (strayPackets) {
+            for (int i = 0, n = strayPackets.size(); i < n; i++) {
+                byte[] packet = strayPackets.packetAt(i);
+                JSObject entry = new JSObject();
+                entry.put("ageMs", (now - strayPackets.nanosAt(i)) / 1_000_000);
+                entry.put("command", packet.length == FMSAPI.PACKET_HEADER_SIZE ? "header_received" : "data_received");
+                entry.put("data", Base64.encodeToString(packet, Base64.NO_WRAP));
+                packets.put(entry);
+            }
+            if (call.getBoolean("clear", false)) {
+                strayPackets.clear();
             }
         }
 
-        boolean matched = bestScore >= threshold && bestUserId != null;
-
+        JSObject result = new JSObject();
         result.put("success", true);
-        result.put("matched", matched);
-        result.put("bestUserId", bestUserId);
-        result.put("bestScore", bestScore);
-        result.put("threshold", threshold);
-        result.put("scores", scoresArray);
+        result.put("packets", packets);
+        call.resolve(result);
+    }
 
+    @PluginMethod
+    public void getLinkStats(PluginCall call) {
+        JSObject result = integrity.toJSObject();
+        result.put("success", true);
         call.resolve(result);
     }
 
-    private boolean initializeMatcher() {
-        if (sgfplibMatcher != null) {
-            return true;
+    /**
+     * 'notifyRead' (default): one read per notify trigger, as the SDK does.
+     * 'pipelined': the next read is queued from the read callback itself, before
+     * the chunk is processed. Only for readers that have the next chunk ready
+     * when the previous read completes.
+     * Readers that push payload in notifications are detected automatically.
+     */
+    @PluginMethod
+    public void setTransferMode(PluginCall call) {
+        String mode = call.getString("mode", "notifyRead");
+        if (!"notifyRead".equals(mode) && !"pipelined".equals(mode)) {
+            call.reject("mode must be 'notifyRead' or 'pipelined'");
+            return;
+        }
+        pipelinedReads = "pipelined".equals(mode);
+        if (call.getBoolean("resetStats", false)) {
+            transferMeter.reset();
         }
 
-        try {
-            UsbManager usbManager = (UsbManager) getContext().getSystemService(Context.USB_SERVICE);
-            sgfplibMatcher = new JSGFPLib(getContext(), usbManager);
+        JSObject result = new JSObject();
+        result.put("success", true);
+        result.put("mode", mode);
+        call.resolve(result);
+    }
 
-            long initResult = sgfplibMatcher.Init(SecuGen.FDxSDKPro.SGFDxDeviceName.SG_DEV_AUTO);
-            if (initResult != SGFDxErrorCode.SGFDX_ERROR_NONE) {
-                Log.e(TAG, "JSGFPLib Init failed: " + initResult);
-                sgfplibMatcher = null;
-                return false;
-            }
+    @PluginMethod
+    public void getTransferStats(PluginCall call) {
+        JSObject result = new JSObject();
+        result.put("success", true);
+        result.put("mode", pipelinedReads ? "pipelined" : "notifyRead");
+        result.put("modes", transferMeter.toJSObject());
+        call.resolve(result);
+    }
 
-            return true;
-        } catch (Throwable t) {
-            Log.e(TAG, "Failed to initialize JSGFPLib matcher", t);
-            sgfplibMatcher = null;
-            return false;
+    /**
+     * Hold back 1:N candidates whose minutiae count is far from the probe's
+     * ('skip' or 'defer', see TemplatePrefilter). Only ANSI 378 / ISO 19794-2
+     * templates carry the count; others are always matched.
+     */
+    @PluginMethod
+    public void setPrefilter(PluginCall call) {
+        String mode = call.getString("mode", "off");
+        if (!"off".equals(mode) && !"skip".equals(mode) && !"defer".equals(mode)) {
+            call.reject("mode must be 'off', 'skip' or 'defer'");
+            return;
+        }
+        double minRatio = call.getDouble("minRatio", 0.5);
+        if (minRatio < 0 || minRatio > 1) {
+            call.reject("minRatio must be between 0 and 1");
+            return;
+        }
+        prefilter.configure(TemplatePrefilter.mode(mode), minRatio, call.getInt("auditEvery", 0));
+        if (call.getBoolean("resetStats", false)) {
+            prefilter.reset();
         }
+
+        JSObject result = new JSObject();
+        result.put("success", true);
+        result.put("mode", mode);
+        call.resolve(result);
     }
 
     @PluginMethod
-    public void identify(PluginCall call) {
-        if (!isConnected) {
-            call.reject("Device not connected");
+    public void getPrefilterStats(PluginCall call) {
+        JSObject result = prefilter.toJSObject();
+        result.put("success", true);
+        call.resolve(result);
+    }
+
+    @PluginMethod
+    public void setGallery(PluginCall call) {
+        JSArray candidatesArray = call.getArray("candidates");
+        if (candidatesArray == null) {
+            call.reject("candidates array is required");
             return;
         }
 
-        byte[] cmd = FMSAPI.cmdFPIdentify();
-        currentCommandCall = call;
-        currentCommandCode = FMSAPI.CMD_FP_IDENTIFY;
-        sendCommand(cmd);
+        gallery = TemplateGallery.fromCandidates(candidatesArray);
+
+        JSObject result = new JSObject();
+        result.put("success", true);
+        result.put("count", gallery.size());
+        result.put("subjects", gallery.subjectCount());
+        result.put("arenaBytes", gallery.arenaBytes());
+        call.resolve(result);
     }
 
     @PluginMethod
-    public void match(PluginCall call) {
-        // Implement match using VERIFY command, exposing userID and score
-        // New behavior: if probeTemplate and candidateTemplate are provided,
-        // perform 1-1 template matching locally using FDxSDKPro instead of device DB.
-        String probeBase64 = call.getString("probeTemplate");
-        String candidateBase64 = call.getString("candidateTemplate");
-
-        if (probeBase64 != null && candidateBase64 != null
-                && !probeBase64.isEmpty() && !candidateBase64.isEmpty()) {
-            if (!initializeMatcher()) {
-                call.reject("FDxSDKPro matcher initialization failed");
-                return;
-            }
+    public void clearGallery(PluginCall call) {
+        gallery = TemplateGallery.EMPTY;
 
-            byte[] probeTemplate;
-            byte[] candidateTemplate;
+        JSObject result = new JSObject();
+        result.put("success", true);
+        result.put("count", 0);
+        call.resolve(result);
+    }
+
+    /**
+     * Abort the capture in progress without disconnecting. Remaining chunks of
+     * the abandoned transfer are drained and discarded so a retry can start at once.
+     * The reader has no stop command; a header it has not sent yet is only
+     * discarded if it arrives within ABANDONED_HEADER_WINDOW_MS.
+     */
+    @PluginMethod
+    public void cancelCapture(PluginCall call) {
+        onProtocol(() -> {
+            boolean cancelled = abandonCapture("Capture cancelled");
+
+            JSObject result = new JSObject();
+            result.put("success", true);
+            result.put("cancelled", cancelled);
+            result.put("drainingBytes", drainBytes);
+            call.resolve(result);
+        });
+    }
+
+    /**
+     * A new capture may only start when none is running, unless the call asks
+     * to preempt the current one.
+     */
+    private boolean claimCapture(PluginCall call) {
+        if (session.claim(SessionState.CAPTURE_AWAITING_HEADER)) {
+            return true;
+        }
+        if (call.getBoolean("preempt", false) && abandonCapture("Capture preempted")
+                && session.claim(SessionState.CAPTURE_AWAITING_HEADER)) {
+            return true;
+        }
+        call.reject("Reader busy: " + SessionState.name(session.get()), ERROR_BUSY);
+        return false;
+    }
+
+    private boolean abandonCapture(String message) {
+        int state = session.get();
+        if (state != SessionState.CAPTURE_AWAITING_HEADER && state != SessionState.CAPTURE_RECEIVING) {
+            return false;
+        }
+        failCapture(message, ERROR_CANCELLED);
+        return true;
+    }
+
+    private void startCapture(PluginCall call) {
+        // For performance and BLE throughput, always request half-size image (150x200)
+        // and enable WSQ compression like iOS implementation
+        boolean fullSize = false;
+
+        this.captureFullSize = fullSize;
+        captureWidth = 150;
+        captureHeight = 200;
+
+        // WSQ stays the default; raw transfers are needed for progressive previews
+        boolean useWSQ = call.getBoolean("wsqFormat", true);
+
+        // Reset capture state (the session was already claimed by the caller)
+        remainingDataSize = 0;
+        totalReceiveSize = 0;
+        isCurrentCaptureWSQ = useWSQ;
+        captureStartTime = System.currentTimeMillis();
+        currentCaptureCall = null; // iOS: capture call is resolved immediately, image delivered via events
+        capturePreviewOptions = PreviewEncoder.Options.from(call);
+        captureMinQuality = call.getInt("minQuality", 0);
+
+        progressivePreview.configure(call.getInt("progressiveRows", 0), call.getInt("progressiveStep", 4));
+
+        // Build capture command using FMSAPI - always half-size
+        byte sizeFlag = FMSAPI.IMAGE_SIZE_HALF;
+        byte[] captureCommand = useWSQ
+                ? FMSAPI.cmdFPCaptureUseWSQ(sizeFlag)
+                : FMSAPI.cmdFPCapture(sizeFlag);
+        deadlines.arm(OperationDeadlines.CAPTURE, call.getInt("timeoutMs", DEFAULT_CAPTURE_TIMEOUT_MS));
+        sendOperationCommand(captureCommand);
+    }
+
+    @PluginMethod
+    public void register(PluginCall call) {
+        if (!isConnected) {
+            call.reject("Device not connected");
+            return;
+        }
+
+        Integer userId = call.getInt("userID");
+        boolean isAdmin = call.getBoolean("isAdmin", false);
+        if (userId == null) {
+            call.reject("userID is required");
+            return;
+        }
+
+        byte[] cmd = FMSAPI.cmdFPRegisterStart(userId, isAdmin);
+        sendTrackedCommand(call, FMSAPI.CMD_FP_REGISTER_START, cmd);
+    }
+
+    @PluginMethod
+    public void completeRegistration(PluginCall call) {
+        if (!isConnected) {
+            call.reject("Device not connected");
+            return;
+        }
+
+        byte[] cmd = FMSAPI.cmdFPRegisterEnd();
+        sendTrackedCommand(call, FMSAPI.CMD_FP_REGISTER_END, cmd);
+    }
+
+    /**
+     * Register and read back the template of each user in userIDs, natively.
+     * Prompts arrive as enrollProgress events and each template as an
+     * enrollTemplate event; the call resolves once the last user is done.
+     */
+    @PluginMethod
+    public void enrollBatch(PluginCall call) {
+        if (!isConnected) {
+            call.reject("Device not connected");
+            return;
+        }
+
+        JSArray ids = call.getArray("userIDs");
+        if (ids == null || ids.length() == 0) {
+            call.reject("userIDs is required");
+            return;
+        }
+        int[] userIds = new int[ids.length()];
+        for (int i = 0; i < userIds.length; i++) {
+            Object id = ids.opt(i);
+            if (!(id instanceof Number)) {
+                call.reject("userIDs must be numbers");
+                return;
+            }
+            userIds[i] = ((Number) id).intValue();
+        }
+
+        // Snapshot of the gallery new templates must not already be in
+        TemplateGallery duplicateGallery = call.getBoolean("checkDuplicates", true) && gallery.size() > 0
+                ? gallery
+                : null;
+        if (duplicateGallery != null && !initializeDuplicateChecker()) {
+            call.reject("FDxSDKPro matcher initialization failed");
+            return;
+        }
+
+        EnrollBatch batch = new EnrollBatch(call, userIds, call.getBoolean("isAdmin", false),
+                call.getInt("timeoutMs", DEFAULT_COMMAND_TIMEOUT_MS), call.getBoolean("stopOnError", false),
+                duplicateGallery, call.getInt("duplicateThreshold", 80));
+        onProtocol(() -> {
+            if (pendingEnroll != null || session.get() != SessionState.IDLE) {
+                call.reject("Reader busy: " + SessionState.name(session.get()), ERROR_BUSY);
+                return;
+            }
+            pendingEnroll = batch;
+            runEnrollStep(batch);
+        });
+    }
+
+    @PluginMethod
+    public void verify(PluginCall call) {
+        if (!isConnected) {
+            call.reject("Device not connected");
+            return;
+        }
+
+        Integer userId = call.getInt("userID");
+        if (userId == null) {
+            call.reject("userID is required");
+            return;
+        }
+
+        byte[] cmd = FMSAPI.cmdFPVerify(userId);
+        sendTrackedCommand(call, FMSAPI.CMD_FP_VERIFY, cmd);
+    }
+
+    @PluginMethod
+    public void matchTemplates(PluginCall call) {
+        JSObject result = new JSObject();
+
+        String probeBase64 = call.getString("probeTemplate");
+        JSArray candidatesArray = call.getArray("candidates");
+        int threshold = call.getInt("threshold", 80);
+
+        if (probeBase64 == null || probeBase64.isEmpty()) {
+            call.reject("probeTemplate is required");
+            return;
+        }
+        if (candidatesArray == null || candidatesArray.length() == 0) {
+            call.reject("candidates array is required");
+            return;
+        }
+
+        if (!initializeMatcher()) {
+            call.reject("FDxSDKPro matcher initialization failed");
+            return;
+        }
+
+        byte[] probeTemplate;
+        try {
+            probeTemplate = Base64.decode(probeBase64, Base64.DEFAULT);
+        } catch (IllegalArgumentException e) {
+            call.reject("Invalid base64 for probeTemplate");
+            return;
+        }
+
+        String aggregate = call.getString("aggregate");
+
+        // Everything besides the probe that the result depends on
+        long candidatesHash = TemplateGallery.candidatesHash(candidatesArray);
+        long context = ProbeResultCache.mix(ProbeResultCache.mix(candidatesHash, threshold),
+                aggregate != null ? SubjectIdentifier.aggregation(aggregate) : -1);
+        context = ProbeResultCache.mix(ProbeResultCache.mix(context, prefilter.getMode()),
+                Double.doubleToLongBits(prefilter.getMinRatio()));
+        // Checked exactly on a hit, so a hash collision can't return another set's result
+        int[] shape = TemplateGallery.candidatesShape(candidatesArray);
+        boolean useCache = call.getBoolean("cache", true);
+        if (useCache && resolveCached(call, probeTemplate, context, shape)) {
+            return;
+        }
+
+        // Only a miss pays for decoding and packing the candidates
+        TemplateGallery candidates = TemplateGallery.fromCandidates(candidatesArray);
+        // Subject-aware: one aggregated score per subject. Otherwise one score
+        // per candidate, in input order. The prefilter may hold some back.
+        SubjectIdentifier.Result best = aggregate != null
+                ? SubjectIdentifier.identify(templateMatcher, probeTemplate, candidates, threshold,
+                        SubjectIdentifier.aggregation(aggregate), prefilter)
+                : SubjectIdentifier.identifySamples(templateMatcher, probeTemplate, candidates, threshold,
+                        prefilter);
+        boolean matched = best.score >= threshold && best.subject != null;
+
+        result.put("success", true);
+        result.put("matched", matched);
+        result.put("bestUserId", best.subject);
+        result.put("bestScore", best.score);
+        result.put("threshold", threshold);
+        result.put("scores", best.scoresToJSArray(candidates));
+        result.put("matcherCalls", best.matcherCalls);
+        result.put("prefiltered", best.held);
+
+        resolveAndCache(call, probeTemplate, context, shape, useCache, result);
+    }
+
+    private boolean resolveCached(PluginCall call, byte[] probe, long context, int[] shape) {
+        JSObject cached = probeCache.get(probe, context, shape);
+        if (cached == null) {
+            return false;
+        }
+        cached.put("cached", true);
+        call.resolve(cached);
+        return true;
+    }
+
+    private void resolveAndCache(PluginCall call, byte[] probe, long context, int[] shape, boolean useCache,
+            JSObject result) {
+        result.put("cached", false);
+        if (useCache) {
+            probeCache.put(probe, context, shape, result);
+        }
+        call.resolve(result);
+    }
+
+    @PluginMethod
+    public void getMatchCacheStats(PluginCall call) {
+        JSObject result = probeCache.toJSObject();
+        if (call.getBoolean("clear", false)) {
+            probeCache.clear();
+        }
+        result.put("success", true);
+        call.resolve(result);
+    }
+
+    private synchronized boolean initializeMatcher() {
+        if (templateMatcher != null) {
+            return true;
+        }
+
+        templateMatcher = TemplateMatcher.create(getContext());
+        return templateMatcher != null;
+    }
+
+    private synchronized boolean initializeDuplicateChecker() {
+        if (duplicateChecker != null) {
+            return true;
+        }
+
+        duplicateChecker = DuplicateChecker.create(getContext(), workerPool, workerCount);
+        return duplicateChecker != null;
+    }
+
+    @PluginMethod
+    public void identify(PluginCall call) {
+        if (!isConnected) {
+            call.reject("Device not connected");
+            return;
+        }
+
+        byte[] cmd = FMSAPI.cmdFPIdentify();
+        sendTrackedCommand(call, FMSAPI.CMD_FP_IDENTIFY, cmd);
+    }
+
+    @PluginMethod
+    public void match(PluginCall call) {
+        // Implement match using VERIFY command, exposing userID and score
+        // New behavior: if probeTemplate and candidateTemplate are provided,
+        // perform 1-1 template matching locally using FDxSDKPro instead of device DB.
+        String probeBase64 = call.getString("probeTemplate");
+        String candidateBase64 = call.getString("candidateTemplate");
+
+        if (probeBase64 != null && candidateBase64 != null
+                && !probeBase64.isEmpty() && !candidateBase64.isEmpty()) {
+            if (!initializeMatcher()) {
+                call.reject("FDxSDKPro matcher initialization failed");
+                return;
+            }
+
+            byte[] probeTemplate;
+            byte[] candidateTemplate;
             try {
                 probeTemplate = Base64.decode(probeBase64, Base64.DEFAULT);
                 candidateTemplate = Base64.decode(candidateBase64, Base64.DEFAULT);
@@ -660,33 +1306,35 @@ public class SecuGenBLEPlugin extends Plugin {
             }
 
             int threshold = call.getInt("threshold", 80);
-
-            boolean[] matchedFlag = new boolean[1];
-            int[] scoreHolder = new int[1];
-
-            long matchError = sgfplibMatcher.MatchTemplate(probeTemplate, candidateTemplate,
-                    SGFDxSecurityLevel.SL_NORMAL, matchedFlag);
-            if (matchError != SGFDxErrorCode.SGFDX_ERROR_NONE) {
-                call.reject("MatchTemplate failed with error: " + matchError);
+            // The candidate is small: key on probe + candidate bytes, so hits compare
+            // both exactly. -2 keeps 1:1 entries apart from matchTemplates ones
+            byte[] pairKey = Arrays.copyOf(probeTemplate, probeTemplate.length + candidateTemplate.length);
+            System.arraycopy(candidateTemplate, 0, pairKey, probeTemplate.length, candidateTemplate.length);
+            long context = ProbeResultCache.mix(ProbeResultCache.mix(probeTemplate.length, threshold), -2);
+            int[] shape = {probeTemplate.length};
+            boolean useCache = call.getBoolean("cache", true);
+            if (useCache && resolveCached(call, pairKey, context, shape)) {
                 return;
             }
 
-            long scoreError = sgfplibMatcher.GetMatchingScore(probeTemplate, candidateTemplate, scoreHolder);
-            if (scoreError != SGFDxErrorCode.SGFDX_ERROR_NONE) {
-                call.reject("GetMatchingScore failed with error: " + scoreError);
-                return;
+            int score;
+            boolean matched;
+            synchronized (templateMatcher) {
+                score = templateMatcher.score(probeTemplate, candidateTemplate);
+                if (score < 0) {
+                    call.reject("Template matching failed with error: " + templateMatcher.getLastError());
+                    return;
+                }
+                matched = score >= threshold && templateMatcher.lastMatched();
             }
 
-            int score = scoreHolder[0];
-            boolean matched = score >= threshold && matchedFlag[0];
-
             JSObject result = new JSObject();
             result.put("success", true);
             result.put("matched", matched);
             result.put("score", score);
             result.put("threshold", threshold);
 
-            call.resolve(result);
+            resolveAndCache(call, pairKey, context, shape, useCache, result);
             return;
         }
 
@@ -702,9 +1350,7 @@ public class SecuGenBLEPlugin extends Plugin {
         }
 
         byte[] cmd = FMSAPI.cmdFPVerify(userId);
-        currentCommandCall = call;
-        currentCommandCode = FMSAPI.CMD_FP_VERIFY;
-        sendCommand(cmd);
+        sendTrackedCommand(call, FMSAPI.CMD_FP_VERIFY, cmd);
     }
 
     @PluginMethod
@@ -721,9 +1367,7 @@ public class SecuGenBLEPlugin extends Plugin {
         }
 
         byte[] cmd = FMSAPI.cmdFPDelete(userId);
-        currentCommandCall = call;
-        currentCommandCode = FMSAPI.CMD_FP_DELETE;
-        sendCommand(cmd);
+        sendTrackedCommand(call, FMSAPI.CMD_FP_DELETE, cmd);
     }
 
     @PluginMethod
@@ -746,9 +1390,41 @@ public class SecuGenBLEPlugin extends Plugin {
         header.setCheckSum();
 
         byte[] cmd = header.get();
-        currentCommandCall = call;
-        currentCommandCode = CMD_SET_POWER_OFF_TIME;
-        sendCommand(cmd);
+        sendTrackedCommand(call, CMD_SET_POWER_OFF_TIME, cmd);
+    }
+
+    @PluginMethod
+    public void getVersion(PluginCall call) {
+        sendSimpleCommand(call, FMSAPI.CMD_GET_VERSION, FMSAPI.cmdGetVersion());
+    }
+
+    @PluginMethod
+    public void getRecordCount(PluginCall call) {
+        sendSimpleCommand(call, FMSAPI.CMD_DB_GET_RECCOUNT, FMSAPI.cmdDBGetRecCount());
+    }
+
+    @PluginMethod
+    public void deleteAllRecords(PluginCall call) {
+        sendSimpleCommand(call, FMSAPI.CMD_DB_DELETE_ALL, FMSAPI.cmdDBDeleteAll());
+    }
+
+    /** Results of each identification arrive as 'autoIdentify' events until stopped. */
+    @PluginMethod
+    public void startAutoIdentify(PluginCall call) {
+        sendSimpleCommand(call, FMSAPI.CMD_FP_AUTO_IDENTIFY_START, FMSAPI.cmdFPAutoIdentifyStart());
+    }
+
+    @PluginMethod
+    public void stopAutoIdentify(PluginCall call) {
+        sendSimpleCommand(call, FMSAPI.CMD_FP_AUTO_IDENTIFY_STOP, FMSAPI.cmdFPAutoIdentifyStop());
+    }
+
+    private void sendSimpleCommand(PluginCall call, byte commandCode, byte[] command) {
+        if (!isConnected) {
+            call.reject("Device not connected");
+            return;
+        }
+        sendTrackedCommand(call, commandCode, command);
     }
 
     @PluginMethod
@@ -764,29 +1440,22 @@ public class SecuGenBLEPlugin extends Plugin {
             return;
         }
 
-        // Reset template transfer state
-        remainingTemplateSize = 0;
-        totalTemplateSize = 0;
-        isReceivingTemplate = false;
-        currentTemplateCall = call;
+        byte[] cmd = cmdGetTemplate(userId);
 
-        int maxTemplateSize = FMSImage.IMG_SIZE_MAX; // safe upper bound
-        if (templateBuffer == null || templateBuffer.length < maxTemplateSize) {
-            templateBuffer = new byte[maxTemplateSize];
-        }
+        onProtocol(() -> {
+            if (!session.claim(SessionState.TEMPLATE_AWAITING_HEADER)) {
+                call.reject("Reader busy: " + SessionState.name(session.get()), ERROR_BUSY);
+                return;
+            }
 
-        // Build CMD_GET_TEMPLATE header manually using FMSHeader
-        FMSHeader header = new FMSHeader();
-        header.setPkt_class((byte) 0x00);
-        header.setPkt_command(CMD_GET_TEMPLATE);
-        header.setPkt_param1((short) userId.intValue());
-        header.setPkt_param2((short) 0);
-        header.setPkt_datasize1((short) 0);
-        header.setPkt_datasize2((short) 0);
-        header.setCheckSum();
+            // Reset template transfer state
+            remainingTemplateSize = 0;
+            totalTemplateSize = 0;
+            currentTemplateCall = call;
 
-        byte[] cmd = header.get();
-        sendCommand(cmd);
+            deadlines.arm(OperationDeadlines.TEMPLATE, call.getInt("timeoutMs", DEFAULT_COMMAND_TIMEOUT_MS));
+            sendOperationCommand(cmd);
+        });
     }
 
     // Helper methods
@@ -827,7 +1496,30 @@ public class SecuGenBLEPlugin extends Plugin {
         }
     }
 
+    private void handleNotification(byte[] value) {
+        // Mirror SDK behavior: a 12-byte packet starting with 'N' (0x4E)
+        // is a notify trigger, and we must explicitly read the data
+        if (value != null
+                && value.length == FMSAPI.PACKET_HEADER_SIZE
+                && value[0] == 0x4E) {
+            requestNextChunk();
+            return;
+        }
+
+        if (value != null && !streamedPayload && isExpectingPayload()) {
+            // The reader pushes payload itself; reading as well would duplicate it
+            Log.d(TAG, "Payload arrives by notification, switching transfer to streamed");
+            streamedPayload = true;
+        }
+
+        handleDataReceived(value);
+    }
+
     private void requestNextChunk() {
+        if (streamedPayload || readInFlight) {
+            // Streamed: nothing to read. In flight: the queued read already covers it.
+            return;
+        }
         if (bluetoothGatt == null || notifyCharacteristic == null) {
             return;
         }
@@ -835,353 +1527,1143 @@ public class SecuGenBLEPlugin extends Plugin {
                 != PackageManager.PERMISSION_GRANTED) {
             return;
         }
-        bluetoothGatt.readCharacteristic(notifyCharacteristic);
+        readInFlight = bluetoothGatt.readCharacteristic(notifyCharacteristic);
     }
 
-    private void sendCommand(byte[] command) {
-        if (writeCharacteristic != null && bluetoothGatt != null) {
-            writeCharacteristic.setValue(command);
-            if (ActivityCompat.checkSelfPermission(getContext(), Manifest.permission.BLUETOOTH_CONNECT) != PackageManager.PERMISSION_GRANTED) {
-                return;
-            }
-            bluetoothGatt.writeCharacteristic(writeCharacteristic);
+    private boolean expectsMorePayloadAfter(int chunkLength) {
+        return drainBytes > chunkLength
+                || (session.is(SessionState.CAPTURE_RECEIVING) && remainingDataSize > chunkLength)
+                || (session.is(SessionState.TEMPLATE_RECEIVING) && remainingTemplateSize > chunkLength);
+    }
+
+    private void beginTransfer() {
+        streamedPayload = false;
+        transferMeter.start();
+    }
+
+    private void finishTransfer(String what, int size) {
+        int mode = streamedPayload ? TransferMeter.MODE_STREAMED
+                : pipelinedReads ? TransferMeter.MODE_PIPELINED : TransferMeter.MODE_NOTIFY_READ;
+        streamedPayload = false;
+        long elapsed = transferMeter.finish(mode, size);
+        if (elapsed > 0) {
+            Log.d(TAG, String.format("%s: %d bytes in %.1f ms (%s, %.1f KB/s)", what, size,
+                    elapsed / 1e6, TransferMeter.name(mode), TransferMeter.kBps(size, elapsed)));
         }
     }
 
-    private byte[] createCaptureCommand(boolean fullSize) {
-        // This should be implemented based on SecuGen protocol
-        // For now, return a mock command
-        return new byte[]{0x01, 0x02, 0x03}; // Placeholder
+    private boolean isExpectingPayload() {
+        return drainBytes > 0
+                || (session.is(SessionState.CAPTURE_RECEIVING) && remainingDataSize > 0)
+                || (session.is(SessionState.TEMPLATE_RECEIVING) && remainingTemplateSize > 0);
     }
 
-    private void handleDataReceived(byte[] data) {
-        if (data == null || data.length == 0) {
-            return;
-        }
+    private boolean isExpectingHeader() {
+        int state = session.get();
+        return state == SessionState.CAPTURE_AWAITING_HEADER
+                || state == SessionState.TEMPLATE_AWAITING_HEADER
+                || state == SessionState.COMMAND_PENDING
+                || awaitsAbandonedHeader();
+    }
 
-        // If this is a 12-byte FMS header, parse using FMSHeader
-        if (data.length == FMSAPI.PACKET_HEADER_SIZE) {
-            FMSHeader header = new FMSHeader(data);
-            byte command = header.pkt_command;
-            byte error = header.pkt_error;
-
-            // Handle fingerprint capture (CMD_FP_CAPTURE = 0x43)
-            if (command == FMSAPI.CMD_FP_CAPTURE) {
-                if (error != FMSAPI.ERR_NONE) {
-                    // Capture failed - report via captureProgress event (like iOS)
-                    JSObject progress = new JSObject();
-                    progress.put("status", "error");
-                    progress.put("message", String.format("Capture failed (Error: 0x%02X)", error));
-                    notifyListeners("captureProgress", progress);
-                    remainingDataSize = 0;
-                    totalReceiveSize = 0;
-                    isCapturingImage = false;
-                    return;
-                }
+    /**
+     * Commands that can be sent twice without a finger on the sensor and
+     * without changing anything on the reader. Capture, verify and identify
+     * would make the reader wait for a new placement, which is exactly what
+     * recovery is meant to spare the user.
+     */
+    private static boolean isRetrySafe(byte[] command) {
+        if (command == null || command.length != FMSAPI.PACKET_HEADER_SIZE) {
+            return false;
+        }
+        switch (command[1]) {
+            case CMD_GET_TEMPLATE:
+            case FMSAPI.CMD_GET_VERSION:
+            case FMSAPI.CMD_DB_GET_RECCOUNT:
+                return true;
+            default:
+                return false;
+        }
+    }
 
-                int dataSize = (((int) header.pkt_datasize1) & 0x0000FFFF)
-                        | ((((int) header.pkt_datasize2) << 16) & 0xFFFF0000);
-
-                Log.d(TAG, "CMD_FP_CAPTURE header: size=" + dataSize
-                        + ", param1=0x" + Integer.toHexString(header.pkt_param1 & 0xFFFF)
-                        + ", error=0x" + Integer.toHexString(error & 0xFF));
-
-                // High byte of param1 indicates WSQ flag in SDK/iOS
-                // ((param1 >> 8) & 0xFF) != 0 => WSQ image
-                isCurrentCaptureWSQ = (((header.pkt_param1 >> 8) & 0xFF) != 0);
-
-                if (dataSize <= 0 || dataSize > FMSImage.IMG_SIZE_MAX) {
-                    // Invalid size - notify error via event
-                    JSObject progress = new JSObject();
-                    progress.put("status", "error");
-                    progress.put("message", "Invalid image data size");
-                    notifyListeners("captureProgress", progress);
-                    remainingDataSize = 0;
-                    totalReceiveSize = 0;
-                    isCapturingImage = false;
-                    return;
-                }
+    /**
+     * Re-sending is only allowed before a transfer has started: once chunks
+     * are on their way, those still queued would be read as strays while the
+     * new header is awaited.
+     */
+    private boolean canRetryCommand() {
+        int state = session.get();
+        return (state == SessionState.COMMAND_PENDING || state == SessionState.TEMPLATE_AWAITING_HEADER)
+                && isRetrySafe(lastCommand);
+    }
 
-                remainingDataSize = dataSize;
-                totalReceiveSize = 0;
-                isCapturingImage = true;
+    /**
+     * A header failed its checksum. Its size field cannot be trusted, so rather
+     * than waiting for data that may never come: re-read, re-send, then fail.
+     */
+    private void recoverCorruptHeader(byte[] data) {
+        boolean expected = isExpectingHeader();
+        int action = integrity.onHeaderCorrupt(expected, canRetryCommand());
+        Log.w(TAG, "Header checksum mismatch: " + FMSAPI.parseResponse(data));
+        applyRecovery(action, "Corrupt response header", ERROR_CHECKSUM);
+    }
 
-                // Notify JS that download has started
-                JSObject progress = new JSObject();
-                progress.put("status", "downloading");
-                progress.put("message", String.format("Downloading %d bytes...", dataSize));
-                progress.put("progress", 0);
-                notifyListeners("captureProgress", progress);
+    private void recoverFailedRead(int status) {
+        if (!isExpectingPayload() && !isExpectingHeader()) {
+            return;
+        }
+        int action = integrity.onReadFailed(canRetryCommand());
+        applyRecovery(action, "Chunk read failed (status " + status + ")", ERROR_READ_FAILED);
+    }
 
-                // Start reading the first chunk of image data
+    private void applyRecovery(int action, String message, String code) {
+        switch (action) {
+            case LinkIntegrity.REREAD:
                 requestNextChunk();
+                break;
+
+            case LinkIntegrity.RETRY_COMMAND:
+                // Only before a transfer (see canRetryCommand), so there is no state to rewind
+                Log.w(TAG, message + ", re-sending command 0x"
+                        + Integer.toHexString(lastCommand[1] & 0xFF));
+                sendCommand(lastCommand);
+                break;
+
+            case LinkIntegrity.GIVE_UP:
+                Log.w(TAG, message + ", giving up");
+                if (session.is(SessionState.CAPTURE_AWAITING_HEADER)) {
+                    // The header did arrive, so there is nothing left to drain
+                    session.advance(SessionState.CAPTURE_AWAITING_HEADER, SessionState.IDLE);
+                    failCapture(message, code);
+                } else if (session.get() != SessionState.IDLE) {
+                    failActiveOperation(message, code);
+                } else {
+                    drainBytes = 0;
+                    abandonedCaptureHeaders = 0;
+                }
+                break;
+        }
+    }
 
+    /**
+     * Send a command whose response header resolves {@code call}. The call is
+     * rejected with a TIMEOUT code if the reader does not answer in time.
+     */
+    private void sendTrackedCommand(PluginCall call, byte commandCode, byte[] command) {
+        onProtocol(() -> {
+            if (!session.claim(SessionState.COMMAND_PENDING)) {
+                call.reject("Reader busy: " + SessionState.name(session.get()), ERROR_BUSY);
                 return;
             }
+            currentCommandCall = call;
+            currentCommandCode = commandCode;
+            deadlines.arm(OperationDeadlines.COMMAND, call.getInt("timeoutMs", DEFAULT_COMMAND_TIMEOUT_MS));
+            sendOperationCommand(command);
+        });
+    }
 
-            // Handle template header (CMD_GET_TEMPLATE = 0x40)
-            if (command == CMD_GET_TEMPLATE && currentTemplateCall != null) {
-                if (error != FMSAPI.ERR_NONE) {
-                    JSObject result = new JSObject();
-                    result.put("success", false);
-                    result.put("message", String.format("Get template failed (Error: 0x%02X)", error));
-                    currentTemplateCall.resolve(result);
-                    currentTemplateCall = null;
+    private static byte[] cmdGetTemplate(int userId) {
+        // Build CMD_GET_TEMPLATE header manually using FMSHeader
+        FMSHeader header = new FMSHeader();
+        header.setPkt_class((byte) 0x00);
+        header.setPkt_command(CMD_GET_TEMPLATE);
+        header.setPkt_param1((short) userId);
+        header.setPkt_param2((short) 0);
+        header.setPkt_datasize1((short) 0);
+        header.setPkt_datasize2((short) 0);
+        header.setCheckSum();
+        return header.get();
+    }
+
+    /**
+     * Issue the current step of the enrollment batch. Every step claims the
+     * session like the single-call operations do, with no PluginCall attached:
+     * completions are routed back here instead of resolving a call.
+     */
+    private void runEnrollStep(EnrollBatch batch) {
+        String prompt;
+        byte[] command;
+        boolean claimed;
+        switch (batch.step()) {
+            case EnrollBatch.STEP_REGISTER_START:
+            case EnrollBatch.STEP_REGISTER_END:
+                boolean start = batch.step() == EnrollBatch.STEP_REGISTER_START;
+                claimed = session.claim(SessionState.COMMAND_PENDING);
+                if (claimed) {
+                    currentCommandCall = null;
+                    currentCommandCode = start ? FMSAPI.CMD_FP_REGISTER_START : FMSAPI.CMD_FP_REGISTER_END;
+                    deadlines.arm(OperationDeadlines.COMMAND, batch.timeoutMs);
+                }
+                prompt = start ? "placeFinger" : "placeFingerAgain";
+                command = start
+                        ? FMSAPI.cmdFPRegisterStart(batch.userId(), batch.isAdmin)
+                        : FMSAPI.cmdFPRegisterEnd();
+                break;
+
+            default:
+                claimed = session.claim(SessionState.TEMPLATE_AWAITING_HEADER);
+                if (claimed) {
                     remainingTemplateSize = 0;
                     totalTemplateSize = 0;
-                    isReceivingTemplate = false;
-                    return;
+                    currentTemplateCall = null;
+                    deadlines.arm(OperationDeadlines.TEMPLATE, batch.timeoutMs);
                 }
+                prompt = "readingTemplate";
+                command = cmdGetTemplate(batch.userId());
+                break;
+        }
+        if (!claimed) {
+            abortEnrollBatch("Reader busy: " + SessionState.name(session.get()), ERROR_BUSY);
+            return;
+        }
 
-                int dataSize = (data[6] & 0xFF)
-                        | ((data[7] & 0xFF) << 8)
-                        | ((data[8] & 0xFF) << 16)
-                        | ((data[9] & 0xFF) << 24);
+        JSObject progress = new JSObject();
+        progress.put("status", prompt);
+        progress.put("userID", batch.userId());
+        progress.put("index", batch.index());
+        progress.put("total", batch.userIds.length);
+        notifyListeners("enrollProgress", progress);
 
-                if (dataSize <= 0 || dataSize > FMSImage.IMG_SIZE_MAX) {
-                    JSObject result = new JSObject();
-                    result.put("success", false);
-                    result.put("message", "Invalid template data size");
-                    currentTemplateCall.resolve(result);
-                    currentTemplateCall = null;
-                    remainingTemplateSize = 0;
-                    totalTemplateSize = 0;
-                    isReceivingTemplate = false;
-                    return;
+        sendOperationCommand(command);
+    }
+
+    /** Register start / end answered; a reader error skips to the next user. */
+    private void onEnrollCommandResult(EnrollBatch batch, FMSResponse r, JSObject result) {
+        if (!r.isOk()) {
+            onEnrollUserFailed(batch, result.getString("message"));
+            return;
+        }
+        batch.setStep(batch.step() == EnrollBatch.STEP_REGISTER_START
+                ? EnrollBatch.STEP_REGISTER_END
+                : EnrollBatch.STEP_TEMPLATE);
+        runEnrollStep(batch);
+    }
+
+    private void onEnrollTemplate(EnrollBatch batch, String templateBase64, byte[] template) {
+        JSObject entry = new JSObject();
+        entry.put("userID", batch.userId());
+        entry.put("index", batch.index());
+        entry.put("template", templateBase64);
+        if (batch.duplicateGallery == null || template == null) {
+            commitEnrolled(batch, entry, null);
+        } else {
+            // Matched on the workers while the reader moves on to the next user
+            batch.checkStarted();
+            duplicateChecker.check(template, batch.duplicateGallery, batch.duplicateThreshold,
+                    check -> onProtocol(() -> {
+                        batch.checkFinished();
+                        commitEnrolled(batch, entry, check);
+                    }));
+        }
+        // The reader is free again: start the next user right away
+        advanceEnrollBatch(batch);
+    }
+
+    private void commitEnrolled(EnrollBatch batch, JSObject entry, DuplicateChecker.Result check) {
+        if (check != null) {
+            entry.put("duplicateCheck", check.toJSObject());
+        }
+        batch.addTemplate(entry, check != null && check.isDuplicate());
+        notifyListeners("enrollTemplate", entry);
+        completeEnrollBatch(batch);
+    }
+
+    private void onEnrollUserFailed(EnrollBatch batch, String message) {
+        batch.addFailure(message);
+        JSObject progress = new JSObject();
+        progress.put("status", "failed");
+        progress.put("userID", batch.userId());
+        progress.put("index", batch.index());
+        progress.put("total", batch.userIds.length);
+        progress.put("message", message);
+        notifyListeners("enrollProgress", progress);
+        if (batch.stopOnError) {
+            finishEnrollBatch(batch);
+        } else {
+            advanceEnrollBatch(batch);
+        }
+    }
+
+    private void advanceEnrollBatch(EnrollBatch batch) {
+        if (batch.nextUser()) {
+            runEnrollStep(batch);
+        } else {
+            finishEnrollBatch(batch);
+        }
+    }
+
+    /** The reader part is over; the call resolves once running checks are in. */
+    private void finishEnrollBatch(EnrollBatch batch) {
+        pendingEnroll = null;
+        batch.readerDone();
+        completeEnrollBatch(batch);
+    }
+
+    private void completeEnrollBatch(EnrollBatch batch) {
+        if (batch.completeIfDone()) {
+            batch.call.resolve(batch.toResult());
+        }
+    }
+
+    /** Timeout, disconnect or busy reader: templates so far were already sent as events. */
+    private void abortEnrollBatch(String message, String code) {
+        EnrollBatch batch = pendingEnroll;
+        pendingEnroll = null;
+        if (batch != null && batch.settle()) {
+            batch.call.reject(message, code);
+        }
+    }
+
+    private void onDeadlineExpired(int slot) {
+        switch (slot) {
+            case OperationDeadlines.CAPTURE:
+                Log.w(TAG, "Capture timed out after " + totalReceiveSize + " bytes");
+                failCapture("Capture timed out", ERROR_TIMEOUT);
+                break;
+
+            case OperationDeadlines.COMMAND:
+                if (session.advance(SessionState.COMMAND_PENDING, SessionState.IDLE)) {
+                    failCommand("Command timed out", ERROR_TIMEOUT);
+                }
+                break;
+
+            case OperationDeadlines.TEMPLATE: {
+                int state = session.get();
+                if ((state == SessionState.TEMPLATE_AWAITING_HEADER || state == SessionState.TEMPLATE_RECEIVING)
+                        && session.advance(state, SessionState.IDLE)) {
+                    failTemplate("Get template timed out", ERROR_TIMEOUT);
                 }
+                break;
+            }
+        }
+    }
 
-                remainingTemplateSize = dataSize;
-                totalTemplateSize = 0;
-                isReceivingTemplate = true;
+    private void failCommand(String message, String code) {
+        deadlines.clear(OperationDeadlines.COMMAND);
+        PluginCall call = currentCommandCall;
+        currentCommandCall = null;
+        currentCommandCode = 0x00;
+        if (call != null) {
+            call.reject(message, code);
+        } else {
+            abortEnrollBatch(message, code);
+        }
+    }
+
+    private void failTemplate(String message, String code) {
+        deadlines.clear(OperationDeadlines.TEMPLATE);
+        transferMeter.cancel();
+        templateBuffer = null;
+        PluginCall call = currentTemplateCall;
+        currentTemplateCall = null;
+        remainingTemplateSize = 0;
+        totalTemplateSize = 0;
+        if (call != null) {
+            call.reject(message, code);
+        } else {
+            abortEnrollBatch(message, code);
+        }
+    }
+
+    /** Reader answered the template request with an error: resolve success=false. */
+    private void resolveTemplateFailure(String message) {
+        if (!session.advance(SessionState.TEMPLATE_AWAITING_HEADER, SessionState.IDLE)) {
+            return;
+        }
+        deadlines.clear(OperationDeadlines.TEMPLATE);
+        PluginCall call = currentTemplateCall;
+        currentTemplateCall = null;
+        remainingTemplateSize = 0;
+        totalTemplateSize = 0;
+        if (call != null) {
+            JSObject result = new JSObject();
+            result.put("success", false);
+            result.put("message", message);
+            call.resolve(result);
+        } else if (pendingEnroll != null) {
+            onEnrollUserFailed(pendingEnroll, message);
+        }
+    }
+
+    /**
+     * Fail whatever operation owns the session and drop all drain state
+     * (e.g. on disconnect).
+     */
+    private void abortPendingOperations(String message, String code) {
+        failActiveOperation(message, code);
+        // Nothing of an old link can arrive on a new one
+        drainBytes = 0;
+        abandonedCaptureHeaders = 0;
+        readInFlight = false;
+        streamedPayload = false;
+    }
+
+    private void failActiveOperation(String message, String code) {
+        int state = session.get();
+        switch (state) {
+            case SessionState.CAPTURE_AWAITING_HEADER:
+            case SessionState.CAPTURE_RECEIVING:
+                failCapture(message, code);
+                break;
+            case SessionState.TEMPLATE_AWAITING_HEADER:
+            case SessionState.TEMPLATE_RECEIVING:
+                if (session.advance(state, SessionState.IDLE)) {
+                    failTemplate(message, code);
+                }
+                break;
+            case SessionState.COMMAND_PENDING:
+                if (session.advance(state, SessionState.IDLE)) {
+                    failCommand(message, code);
+                }
+                break;
+        }
+    }
+
+    /**
+     * Abandon the current capture: reset transfer state, report the error via
+     * captureProgress and reject a pending captureAndIdentify call.
+     */
+    private void failCapture(String message, String code) {
+        deadlines.clear(OperationDeadlines.CAPTURE);
+
+        // Whatever the reader still sends for this capture must be swallowed.
+        // The CAS decides the race with the packet path finishing the transfer.
+        int state = session.get();
+        if (state == SessionState.CAPTURE_AWAITING_HEADER
+                && session.advance(SessionState.CAPTURE_AWAITING_HEADER, SessionState.IDLE)) {
+            abandonedCaptureHeaders++;
+            abandonedHeaderDeadline = SystemClock.uptimeMillis() + ABANDONED_HEADER_WINDOW_MS;
+        } else if (state == SessionState.CAPTURE_RECEIVING
+                && session.advance(SessionState.CAPTURE_RECEIVING, SessionState.IDLE)) {
+            drainBytes += remainingDataSize;
+        }
+        remainingDataSize = 0;
+        totalReceiveSize = 0;
+        imageBuffer = null; // may still be written by a late chunk, so not pooled
+        transferMeter.cancel();
+
+        JSObject progress = new JSObject();
+        if (ERROR_TIMEOUT.equals(code)) {
+            progress.put("status", "timeout");
+        } else if (ERROR_CANCELLED.equals(code)) {
+            progress.put("status", "cancelled");
+        } else {
+            progress.put("status", "error");
+        }
+        progress.put("message", message);
+        notifyListeners("captureProgress", progress);
+
+        IdentifyRequest identifyRequest = pendingIdentify;
+        pendingIdentify = null;
+        if (identifyRequest != null) {
+            identifyRequest.call.reject(message, code);
+        }
+        BurstCapture burst = pendingBurst;
+        pendingBurst = null;
+        if (burst != null && burst.settle()) {
+            burst.call.reject(message, code);
+        }
+    }
 
+    /** Send the command that starts an operation; it may be re-sent by recovery. */
+    private void sendOperationCommand(byte[] command) {
+        integrity.beginOperation();
+        lastCommand = command;
+        sendCommand(command);
+    }
+
+    private void sendCommand(byte[] command) {
+        PacketTrace trace = packetTrace;
+        if (trace != null) {
+            trace.record(PacketTrace.DIR_OUT, command);
+        }
+        if (writeCharacteristic != null && bluetoothGatt != null) {
+            writeCharacteristic.setValue(command);
+            if (ActivityCompat.checkSelfPermission(getContext(), Manifest.permission.BLUETOOTH_CONNECT) != PackageManager.PERMISSION_GRANTED) {
                 return;
             }
+            bluetoothGatt.writeCharacteristic(writeCharacteristic);
+        }
+    }
 
-            // Handle register / completeRegistration / verify / identify
-            if (currentCommandCall != null && command == currentCommandCode) {
-                // Parse param1 (userID) and param2 (score) from header
-                int param1 = (data[2] & 0xFF) | ((data[3] & 0xFF) << 8);
-                int param2 = (data[4] & 0xFF) | ((data[5] & 0xFF) << 8);
-
-                JSObject result = new JSObject();
-
-                switch (command) {
-                    case FMSAPI.CMD_FP_REGISTER_START:
-                        if (error == FMSAPI.ERR_NONE) {
-                            result.put("success", true);
-                            result.put("message", "Fingerprint registration started");
-                        } else if (error == FMSAPI.ERR_ALREADY_REGISTERED_USER) {
-                            result.put("success", false);
-                            result.put("message", String.format("Register start failed (Error: 0x%02X)", error));
-                        } else {
-                            result.put("success", false);
-                            result.put("message", String.format("Register start failed (Error: 0x%02X)", error));
-                        }
-                        break;
-
-                    case FMSAPI.CMD_FP_REGISTER_END:
-                        if (error == FMSAPI.ERR_NONE) {
-                            result.put("success", true);
-                            result.put("message", "Fingerprint registration completed");
-                        } else {
-                            result.put("success", false);
-                            result.put("message", String.format("Register end failed (Error: 0x%02X)", error));
-                        }
-                        break;
-
-                    case FMSAPI.CMD_FP_VERIFY:
-                        result.put("userID", param1);
-                        result.put("score", param2);
-                        if (error == FMSAPI.ERR_NONE) {
-                            result.put("success", true);
-                            result.put("message", "Fingerprint verification success");
-                        } else if (error == FMSAPI.ERR_VERIFY_FAILED) {
-                            result.put("success", false);
-                            result.put("message", "Fingerprint verification failed");
-                        } else if (error == FMSAPI.ERR_USER_NOT_FOUND) {
-                            result.put("success", false);
-                            result.put("message", "User not found");
-                        } else {
-                            result.put("success", false);
-                            result.put("message", String.format("Verify failed (Error: 0x%02X)", error));
-                        }
-                        break;
-
-                    case FMSAPI.CMD_FP_IDENTIFY:
-                        if (error == FMSAPI.ERR_NONE) {
-                            result.put("success", true);
-                            result.put("message", "Fingerprint identify success");
-                            result.put("userID", param1);
-                            result.put("score", param2);
-                        } else if (error == FMSAPI.ERR_IDENTIFY_FAILED) {
-                            result.put("success", false);
-                            result.put("message", "Fingerprint identify failed");
-                        } else {
-                            result.put("success", false);
-                            result.put("message", String.format("Identify failed (Error: 0x%02X)", error));
-                        }
-                        break;
-
-                    case FMSAPI.CMD_FP_DELETE:
-                        result.put("userID", param1);
-                        if (error == FMSAPI.ERR_NONE) {
-                            result.put("success", true);
-                            result.put("message", String.format("User %d deleted", param1));
-                        } else if (error == FMSAPI.ERR_USER_NOT_FOUND) {
-                            result.put("success", false);
-                            result.put("message", String.format("User %d not found", param1));
-                        } else {
-                            result.put("success", false);
-                            result.put("message", String.format("Delete failed (Error: 0x%02X)", error));
-                        }
-                        break;
-
-                    case CMD_SET_POWER_OFF_TIME:
-                        if (error == FMSAPI.ERR_NONE) {
-                            result.put("success", true);
-                            result.put("message", "Power off time set successfully");
-                        } else {
-                            result.put("success", false);
-                            result.put("message", String.format("Set power off time failed (Error: 0x%02X)", error));
-                        }
-                        break;
-                }
+    private byte[] createCaptureCommand(boolean fullSize) {
+        // This should be implemented based on SecuGen protocol
+        // For now, return a mock command
+        return new byte[]{0x01, 0x02, 0x03}; // Placeholder
+    }
+
+    /** Builds the JS result of a header-only command response. */
+    private interface ResultBuilder {
+        void build(FMSResponse response, JSObject result);
+    }
+
+    private void registerResponseHandlers() {
+        // Streaming responses: the header announces a payload
+        dispatcher.register(FMSAPI.CMD_FP_CAPTURE, this::onCaptureHeader);
+        dispatcher.register(CMD_GET_TEMPLATE, this::onTemplateHeader);
+        dispatcher.register(FMSAPI.CMD_DB_GET_REC, this::onTemplateHeader);
+        dispatcher.register(FMSAPI.CMD_DB_GET_FIRSTREC, this::onTemplateHeader);
+        dispatcher.register(FMSAPI.CMD_DB_GET_NEXTREC, this::onTemplateHeader);
+
+        // Header-only responses resolving the pending command call
+        dispatcher.register(FMSAPI.CMD_GET_VERSION, commandResult((r, result) -> {
+            if (outcome(r, result, "Firmware version read")) {
+                result.put("version", Integer.toHexString(r.param1) + "." + Integer.toHexString(r.param2));
+            }
+        }));
+        dispatcher.register(FMSAPI.CMD_FP_REGISTER_START, commandResult((r, result) ->
+                outcome(r, result, "Fingerprint registration started")));
+        dispatcher.register(FMSAPI.CMD_FP_REGISTER_END, commandResult((r, result) ->
+                outcome(r, result, "Fingerprint registration completed")));
+        dispatcher.register(FMSAPI.CMD_FP_VERIFY, commandResult((r, result) -> {
+            result.put("userID", r.param1);
+            result.put("score", r.param2);
+            if (r.error == FMSError.VERIFY_FAILED) {
+                fail(result, "Fingerprint verification failed");
+            } else if (r.error == FMSError.USER_NOT_FOUND) {
+                fail(result, "User not found");
+            } else {
+                outcome(r, result, "Fingerprint verification success");
+            }
+        }));
+        dispatcher.register(FMSAPI.CMD_FP_IDENTIFY, commandResult((r, result) -> {
+            if (r.error == FMSError.IDENTIFY_FAILED) {
+                fail(result, "Fingerprint identify failed");
+            } else if (outcome(r, result, "Fingerprint identify success")) {
+                result.put("userID", r.param1);
+                result.put("score", r.param2);
+            }
+        }));
+        dispatcher.register(FMSAPI.CMD_FP_DELETE, commandResult((r, result) -> {
+            result.put("userID", r.param1);
+            if (r.error == FMSError.USER_NOT_FOUND) {
+                fail(result, "User " + r.param1 + " not found");
+            } else {
+                outcome(r, result, "User " + r.param1 + " deleted");
+            }
+        }));
+        dispatcher.register(CMD_SET_POWER_OFF_TIME, commandResult((r, result) ->
+                outcome(r, result, "Power off time set successfully")));
+        dispatcher.register(FMSAPI.CMD_DB_GET_RECCOUNT, commandResult((r, result) -> {
+            if (outcome(r, result, "Record count read")) {
+                result.put("count", r.param1);
+            }
+        }));
+        dispatcher.register(FMSAPI.CMD_DB_ADD_REC, commandResult((r, result) ->
+                outcome(r, result, "Record added")));
+        dispatcher.register(FMSAPI.CMD_DB_DELETE_ALL, commandResult((r, result) ->
+                outcome(r, result, "All records deleted")));
+        dispatcher.register(FMSAPI.CMD_FP_AUTO_IDENTIFY_STOP, commandResult((r, result) ->
+                outcome(r, result, "Auto identify stopped")));
+
+        // Auto identify acknowledges the start, then pushes one header per finger
+        CommandDispatcher.Handler autoIdentifyStarted = commandResult((r, result) ->
+                outcome(r, result, "Auto identify started"));
+        dispatcher.register(FMSAPI.CMD_FP_AUTO_IDENTIFY_START, (r, packet) -> {
+            if (session.is(SessionState.COMMAND_PENDING) && currentCommandCode == r.command) {
+                autoIdentifyStarted.onResponse(r, packet);
+            } else {
+                onAutoIdentifyResult(r);
+            }
+        });
+    }
+
+    /** Puts success and message; on error the message comes from the failure table. */
+    private static boolean outcome(FMSResponse r, JSObject result, String successMessage) {
+        boolean ok = r.isOk();
+        result.put("success", ok);
+        result.put("message", ok ? successMessage : ResponseMessages.failure(r.command, r.errorCode));
+        return ok;
+    }
+
+    private static void fail(JSObject result, String message) {
+        result.put("success", false);
+        result.put("message", message);
+    }
 
-                currentCommandCall.resolve(result);
-                currentCommandCall = null;
-                currentCommandCode = 0x00;
+    /** Header-only strategy: build the result and resolve the pending command call. */
+    private CommandDispatcher.Handler commandResult(ResultBuilder builder) {
+        return (r, packet) -> {
+            if (!session.is(SessionState.COMMAND_PENDING) || r.command != currentCommandCode) {
+                onUnhandledResponse(r, packet);
                 return;
             }
 
-            // For now, for other commands just emit raw dataReceived for debugging
-            JSObject dataEvent = new JSObject();
-            dataEvent.put("command", "header_received");
-            dataEvent.put("data", Base64.encodeToString(data, Base64.DEFAULT));
-            notifyListeners("dataReceived", dataEvent);
+            JSObject result = new JSObject();
+            builder.build(r, result);
+
+            if (!session.advance(SessionState.COMMAND_PENDING, SessionState.IDLE)) {
+                return; // timed out or aborted meanwhile
+            }
+            deadlines.clear(OperationDeadlines.COMMAND);
+            PluginCall call = currentCommandCall;
+            currentCommandCall = null;
+            currentCommandCode = 0x00;
+            if (call != null) {
+                call.resolve(result);
+            } else if (pendingEnroll != null) {
+                onEnrollCommandResult(pendingEnroll, r, result);
+            }
+        };
+    }
+
+    private void onAutoIdentifyResult(FMSResponse r) {
+        JSObject event = new JSObject();
+        if (r.error == FMSError.IDENTIFY_FAILED) {
+            fail(event, "Fingerprint identify failed");
+        } else if (outcome(r, event, "Fingerprint identify success")) {
+            event.put("userID", r.param1);
+            event.put("score", r.param2);
+        }
+        notifyListeners("autoIdentify", event);
+    }
+
+    private void onUnhandledResponse(FMSResponse r, byte[] packet) {
+        // Nobody is waiting for this header; surface it for debugging
+        onStrayPacket("header_received", packet);
+    }
+
+    /** Image strategy: announce the capture payload and start reading it. */
+    private void onCaptureHeader(FMSResponse r, byte[] packet) {
+        byte error = r.errorCode;
+        if (awaitsAbandonedHeader()) {
+            // Header of a cancelled/timed-out capture: drain its payload
+            abandonedCaptureHeaders--;
+            if (error == FMSAPI.ERR_NONE) {
+                drainBytes += r.dataSize;
+                requestNextChunk();
+            }
+            return;
+        }
+        if (!session.is(SessionState.CAPTURE_AWAITING_HEADER)) {
+            // Nobody asked for this image
+            session.reportIllegal(SessionState.CAPTURE_RECEIVING);
+            return;
+        }
+
+        if (error != FMSAPI.ERR_NONE) {
+            // Capture failed - report via captureProgress event (like iOS).
+            // The header is consumed, so nothing is left to drain.
+            session.advance(SessionState.CAPTURE_AWAITING_HEADER, SessionState.IDLE);
+            failCapture(ResponseMessages.failure(r.command, error), "CAPTURE_FAILED");
+            return;
+        }
+
+        int dataSize = r.dataSize;
+
+        // High byte of param1 indicates WSQ flag in SDK/iOS
+        // ((param1 >> 8) & 0xFF) != 0 => WSQ image
+        isCurrentCaptureWSQ = ((r.param1 >> 8) & 0xFF) != 0;
+        Log.d(TAG, "CMD_FP_CAPTURE header: size=" + dataSize + ", wsq=" + isCurrentCaptureWSQ);
+
+        if (dataSize <= 0 || dataSize > FMSImage.IMG_SIZE_MAX) {
+            // Invalid size - notify error via event
+            session.advance(SessionState.CAPTURE_AWAITING_HEADER, SessionState.IDLE);
+            failCapture("Invalid image data size", "CAPTURE_FAILED");
+            return;
+        }
+
+        remainingDataSize = dataSize;
+        totalReceiveSize = 0;
+        imageBuffer = bufferPool.acquire(dataSize);
+        beginTransfer();
+
+        if (!isCurrentCaptureWSQ) {
+            // Raw image: dimensions follow from the transfer size
+            rawLayout.setDimensions(dataSize);
+            captureWidth = rawLayout.getmWidth();
+            captureHeight = rawLayout.getmHeight();
+            progressivePreview.start(captureWidth, captureHeight);
+        }
+
+        // Publish only once the transfer fields are set up
+        if (!session.advance(SessionState.CAPTURE_AWAITING_HEADER, SessionState.CAPTURE_RECEIVING)) {
+            return;
+        }
+
+        // Notify JS that download has started (bursts report per frame instead)
+        if (pendingBurst == null) {
+            JSObject progress = new JSObject();
+            progress.put("status", "downloading");
+            progress.put("message", "Downloading " + dataSize + " bytes...");
+            progress.put("progress", 0);
+            notifyListeners("captureProgress", progress);
+        }
+
+        // Start reading the first chunk of image data
+        requestNextChunk();
+    }
+
+    /** Template strategy: size the template stream; chunks arrive on their own. */
+    private void onTemplateHeader(FMSResponse r, byte[] packet) {
+        if (!session.is(SessionState.TEMPLATE_AWAITING_HEADER)) {
+            session.reportIllegal(SessionState.TEMPLATE_RECEIVING);
+            return;
+        }
+        if (!r.isOk()) {
+            resolveTemplateFailure(ResponseMessages.failure(r.command, r.errorCode));
+            return;
+        }
+
+        int dataSize = r.dataSize;
+
+        if (dataSize <= 0 || dataSize > FMSImage.IMG_SIZE_MAX) {
+            resolveTemplateFailure("Invalid template data size");
+            return;
+        }
+
+        remainingTemplateSize = dataSize;
+        totalTemplateSize = 0;
+        templateBuffer = bufferPool.acquire(dataSize);
+        beginTransfer();
+        session.advance(SessionState.TEMPLATE_AWAITING_HEADER, SessionState.TEMPLATE_RECEIVING);
+    }
+
+    private void handleDataReceived(byte[] data) {
+        if (data == null || data.length == 0) {
+            return;
+        }
+
+        // A 12-byte packet is a header only if its checksum matches; mid-payload
+        // a mismatch just means the last chunk happens to be 12 bytes long.
+        // A longer packet is a header plus the first payload bytes only while
+        // that header is awaited.
+        boolean isHeader = data.length >= FMSAPI.PACKET_HEADER_SIZE
+                && (data.length == FMSAPI.PACKET_HEADER_SIZE || isAwaitingDataHeader())
+                && response.decode(data, 0) && response.checksumOk
+                && (data.length == FMSAPI.PACKET_HEADER_SIZE || isAwaitedCommand(response.command));
+        if (data.length == FMSAPI.PACKET_HEADER_SIZE && !isHeader && !isExpectingPayload()) {
+            recoverCorruptHeader(data);
+            return;
+        }
+
+        // The header was decoded into response above
+        if (isHeader) {
+            integrity.onHeaderValid();
+            dispatcher.dispatch(response, data);
+            if (data.length == FMSAPI.PACKET_HEADER_SIZE) {
+                return;
+            }
+            handlePayload(payloadView.wrap(data, FMSAPI.PACKET_HEADER_SIZE,
+                    data.length - FMSAPI.PACKET_HEADER_SIZE));
+            return;
+        }
+
+        handlePayload(payloadView.wrap(data, 0, data.length));
+    }
+
+    /**
+     * The protocol has no way to stop a capture, and a reader that dropped the
+     * command (or answers only the newest one) never sends the abandoned
+     * header. So it is only expected for a short window; after that a capture
+     * header goes to whoever is waiting for one.
+     */
+    private boolean awaitsAbandonedHeader() {
+        if (abandonedCaptureHeaders > 0 && SystemClock.uptimeMillis() >= abandonedHeaderDeadline) {
+            Log.d(TAG, "Gave up on " + abandonedCaptureHeaders + " abandoned capture header(s)");
+            abandonedCaptureHeaders = 0;
+        }
+        return abandonedCaptureHeaders > 0;
+    }
+
+    private boolean isAwaitingDataHeader() {
+        return awaitsAbandonedHeader()
+                || session.is(SessionState.CAPTURE_AWAITING_HEADER)
+                || session.is(SessionState.TEMPLATE_AWAITING_HEADER);
+    }
+
+    private boolean isAwaitedCommand(byte command) {
+        return (awaitsAbandonedHeader() && command == FMSAPI.CMD_FP_CAPTURE)
+                || (lastCommand != null && command == lastCommand[1]);
+    }
+
+    /**
+     * Route a payload view to the transfer it belongs to. The bytes are copied
+     * once, from the packet straight into the transfer buffer.
+     */
+    private void handlePayload(FMSData chunk) {
+
+        // Discard leftover chunks of an abandoned capture, keep the reader flowing
+        if (drainBytes > 0) {
+            drainBytes -= Math.min(chunk.d_length, drainBytes);
+            if (drainBytes > 0) {
+                requestNextChunk();
+            }
             return;
         }
 
         // Handle template data stream
-        if (isReceivingTemplate && remainingTemplateSize > 0 && currentTemplateCall != null) {
-            int chunkLen = Math.min(data.length, remainingTemplateSize);
-            if (templateBuffer != null && totalTemplateSize + chunkLen <= templateBuffer.length) {
-                System.arraycopy(data, 0, templateBuffer, totalTemplateSize, chunkLen);
+        if (session.is(SessionState.TEMPLATE_RECEIVING) && remainingTemplateSize > 0) {
+            int chunkLen = Math.min(chunk.d_length, remainingTemplateSize);
+            byte[] buffer = templateBuffer;
+            if (buffer != null && totalTemplateSize + chunkLen <= buffer.length) {
+                chunk.copyTo(buffer, totalTemplateSize, chunkLen);
             }
             remainingTemplateSize -= chunkLen;
             totalTemplateSize += chunkLen;
+            transferMeter.chunk();
 
             if (remainingTemplateSize > 0) {
                 return;
             }
 
             // All template data received
-            isReceivingTemplate = false;
+            if (!session.advance(SessionState.TEMPLATE_RECEIVING, SessionState.IDLE)) {
+                return;
+            }
+            finishTransfer("Template", totalTemplateSize);
 
             String templateBase64 = "";
-            if (templateBuffer != null && totalTemplateSize > 0) {
-                byte[] rawTmpl = new byte[totalTemplateSize];
-                System.arraycopy(templateBuffer, 0, rawTmpl, 0, totalTemplateSize);
-                templateBase64 = Base64.encodeToString(rawTmpl, Base64.NO_WRAP);
+            byte[] template = null;
+            if (buffer != null && totalTemplateSize > 0) {
+                templateBase64 = Base64.encodeToString(buffer, 0, totalTemplateSize, Base64.NO_WRAP);
+                if (currentTemplateCall == null && pendingEnroll != null && pendingEnroll.duplicateGallery != null) {
+                    // Outlives the pooled buffer while the duplicate check runs
+                    template = Arrays.copyOf(buffer, totalTemplateSize);
+                }
             }
+            templateBuffer = null;
+            releaseBuffer(buffer);
 
             JSObject result = new JSObject();
             result.put("success", true);
             result.put("template", templateBase64);
 
-            currentTemplateCall.resolve(result);
+            deadlines.clear(OperationDeadlines.TEMPLATE);
+            PluginCall call = currentTemplateCall;
             currentTemplateCall = null;
+            if (call != null) {
+                call.resolve(result);
+            } else if (pendingEnroll != null) {
+                onEnrollTemplate(pendingEnroll, templateBase64, template);
+            }
 
             return;
         }
 
         // If we are in the middle of receiving image data, append chunks
-        if (isCapturingImage && remainingDataSize > 0) {
-            int chunkLen = Math.min(data.length, remainingDataSize);
-            if (imageBuffer != null && totalReceiveSize + chunkLen <= imageBuffer.length) {
-                System.arraycopy(data, 0, imageBuffer, totalReceiveSize, chunkLen);
+        if (session.is(SessionState.CAPTURE_RECEIVING) && remainingDataSize > 0) {
+            int chunkLen = Math.min(chunk.d_length, remainingDataSize);
+            byte[] buffer = imageBuffer;
+            if (buffer != null && totalReceiveSize + chunkLen <= buffer.length) {
+                chunk.copyTo(buffer, totalReceiveSize, chunkLen);
             }
             remainingDataSize -= chunkLen;
             totalReceiveSize += chunkLen;
+            transferMeter.chunk();
 
-            int percent = (totalReceiveSize + remainingDataSize) > 0
-                    ? (int) ((totalReceiveSize * 100L) / (totalReceiveSize + remainingDataSize))
-                    : 100;
+            if (pendingBurst == null) {
+                int percent = (totalReceiveSize + remainingDataSize) > 0
+                        ? (int) ((totalReceiveSize * 100L) / (totalReceiveSize + remainingDataSize))
+                        : 100;
 
-            JSObject progress = new JSObject();
-            progress.put("status", "downloading");
-            progress.put("message", "Downloading image data...");
-            progress.put("progress", percent);
-            notifyListeners("captureProgress", progress);
+                JSObject progress = new JSObject();
+                progress.put("status", "downloading");
+                progress.put("message", "Downloading image data...");
+                progress.put("progress", percent);
+                notifyListeners("captureProgress", progress);
+            }
 
             // If still remaining, wait for further chunks
             if (remainingDataSize > 0) {
+                if (progressivePreview.isEnabled() && !isCurrentCaptureWSQ) {
+                    JSObject partial = progressivePreview.update(buffer, totalReceiveSize);
+                    if (partial != null) {
+                        notifyListeners("capturePreview", partial);
+                    }
+                }
+
                 // Request next data chunk from the device, mirroring SDK behavior
                 requestNextChunk();
                 return;
             }
 
-            // All data received - finalize capture
-            isCapturingImage = false;
-            // Base64 encode final image bytes (WSQ-decoded or raw)
-            String imageBase64 = "";
-            int finalWidth = captureWidth;
-            int finalHeight = captureHeight;
-
-            if (imageBuffer != null && totalReceiveSize > 0) {
-                byte[] raw = new byte[totalReceiveSize];
-                System.arraycopy(imageBuffer, 0, raw, 0, totalReceiveSize);
-
-                if (isCurrentCaptureWSQ) {
-                    try {
-                        DeviceControlActivity.WSQInfoClass info = new DeviceControlActivity.WSQInfoClass();
-                        DeviceControlActivity wsqDecoder = new DeviceControlActivity();
-                        byte[] decoded = wsqDecoder.jniSgWSQDecode(info, raw, raw.length);
-
-                        if (decoded != null && info.width > 0 && info.height > 0
-                                && decoded.length == info.width * info.height) {
-                            finalWidth = info.width;
-                            finalHeight = info.height;
-                            imageBase64 = Base64.encodeToString(decoded, Base64.NO_WRAP);
-                        } else {
-                            // Fallback: use original buffer as raw
-                            imageBase64 = Base64.encodeToString(raw, Base64.NO_WRAP);
-                        }
-                    } catch (Throwable t) {
-                        Log.e(TAG, "WSQ decode failed, sending raw buffer", t);
-                        imageBase64 = Base64.encodeToString(raw, Base64.NO_WRAP);
-                    }
-                } else {
-                    // Non-WSQ: raw grayscale directly
-                    imageBase64 = Base64.encodeToString(raw, Base64.NO_WRAP);
+            // All data received - finalize capture off the GATT thread, unless a
+            // cancel/timeout won the race for the session
+            if (!session.advance(SessionState.CAPTURE_RECEIVING, SessionState.IDLE)) {
+                return;
+            }
+            deadlines.clear(OperationDeadlines.CAPTURE);
+            finishTransfer("Image", totalReceiveSize);
+
+            // The pooled buffer itself moves to the image thread, which returns it
+            imageBuffer = null;
+            final byte[] received = totalReceiveSize > 0 ? buffer : null;
+            final boolean isWSQ = isCurrentCaptureWSQ;
+            final int receivedSize = totalReceiveSize;
+            final int width = captureWidth;
+            final int height = captureHeight;
+            final PreviewEncoder.Options previewOptions = capturePreviewOptions;
+            final int minQuality = captureMinQuality;
+            final BurstCapture burst = pendingBurst;
+            // Taken here, not on the image thread: the next capture may be claimed at once
+            final IdentifyRequest identifyRequest = pendingIdentify;
+            pendingIdentify = null;
+            final long startTime = captureStartTime;
+
+            FMSCaptureArchive archive = captureArchive;
+            if (archive != null && received != null) {
+                // The archive writes asynchronously, so it gets its own exact-size copy
+                archive.offer(System.currentTimeMillis(), connectedDeviceAddress, width, height, isWSQ,
+                        Arrays.copyOf(received, receivedSize));
+            }
+            imageExecutor.execute(() -> {
+                try {
+                    finishCapture(received, receivedSize, isWSQ, width, height, previewOptions, minQuality, burst,
+                            identifyRequest, startTime);
+                } finally {
+                    releaseBuffer(buffer);
+                }
+            });
+
+            if (burst != null) {
+                continueBurst(burst);
+            }
+            return;
+        }
+
+        // Default: keep the chunk for debugging
+        onStrayPacket("data_received", chunk.d_data, chunk.d_offset, chunk.d_length);
+    }
+
+    private void onStrayPacket(String command, byte[] packet) {
+        onStrayPacket(command, packet, 0, packet.length);
+    }
+
+    private void onStrayPacket(String command, byte[] packet, int offset, int length) {
+        strayPackets.record(PacketTrace.DIR_IN_READ, System.nanoTime(), packet, offset, length);
+
+        int every = debugEventEvery;
+        if (every <= 0 || ++debugEventCounter < every) {
+            return;
+        }
+        debugEventCounter = 0;
+        JSObject dataEvent = new JSObject();
+        dataEvent.put("command", command);
+        dataEvent.put("data", Base64.encodeToString(packet, offset, length, Base64.NO_WRAP));
+        notifyListeners("dataReceived", dataEvent);
+    }
+
+    /** Start the next burst frame while the image thread scores the last one. */
+    private void continueBurst(BurstCapture burst) {
+        if (!burst.startNext()) {
+            pendingBurst = null;
+            return;
+        }
+        if (!session.claim(SessionState.CAPTURE_AWAITING_HEADER)) {
+            pendingBurst = null;
+            if (burst.settle()) {
+                burst.call.reject("Reader busy: " + SessionState.name(session.get()), ERROR_BUSY);
+            }
+            return;
+        }
+        startCapture(burst.call);
+    }
+
+    private void finishCapture(byte[] raw, int receivedSize, boolean isWSQ, int width, int height,
+                               PreviewEncoder.Options previewOptions, int minQuality, BurstCapture burst,
+                               IdentifyRequest identifyRequest, long startTime) {
+        long decodeStart = System.currentTimeMillis();
+        byte[] pixels = raw;
+        int finalWidth = width;
+        int finalHeight = height;
+        boolean isGrayscale = raw != null && !isWSQ && receivedSize >= width * height;
+
+        if (raw != null && isWSQ) {
+            try {
+                DeviceControlActivity.WSQInfoClass info = new DeviceControlActivity.WSQInfoClass();
+                DeviceControlActivity wsqDecoder = new DeviceControlActivity();
+                byte[] decoded = wsqDecoder.jniSgWSQDecode(info, raw, receivedSize);
+
+                if (decoded != null && info.width > 0 && info.height > 0
+                        && decoded.length == info.width * info.height) {
+                    finalWidth = info.width;
+                    finalHeight = info.height;
+                    pixels = decoded;
+                    isGrayscale = true;
                 }
+                // Otherwise fall back to the original buffer as raw
+            } catch (Throwable t) {
+                Log.e(TAG, "WSQ decode failed, sending raw buffer", t);
+            }
+            if (!isGrayscale) {
+                // The transfer completed but the payload does not decode
+                integrity.onPayloadRejected();
+            }
+        }
+
+        QualityAnalyzer.Result quality = null;
+        if (isGrayscale) {
+            try {
+                quality = qualityAnalyzer.analyze(pixels, finalWidth, finalHeight);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
             }
+        }
+        boolean qualityRejected = quality != null && minQuality > 0 && quality.score < minQuality;
+        // raw may be a pooled buffer longer than the image
+        int length = pixels == raw ? receivedSize : (pixels != null ? pixels.length : 0);
+
+        if (burst != null) {
+            finishBurstFrame(burst, pixels, length, finalWidth, finalHeight, isGrayscale, isWSQ, receivedSize,
+                    quality, previewOptions, minQuality);
+            return;
+        }
+
+        if (identifyRequest != null) {
+            finishIdentify(identifyRequest, isGrayscale ? pixels : null, length, finalWidth, finalHeight,
+                    quality, qualityRejected, startTime, decodeStart);
 
-            // Emit captureComplete event with payload matching iOS
-            JSObject complete = new JSObject();
-            complete.put("success", true);
-            complete.put("imageData", imageBase64);
-            complete.put("width", finalWidth);
-            complete.put("height", finalHeight);
-            complete.put("isWSQ", isCurrentCaptureWSQ);
-            complete.put("size", totalReceiveSize);
-            complete.put("message", "Fingerprint captured successfully");
-            notifyListeners("captureComplete", complete);
-
-            // Final captureProgress event (status=complete) like iOS
             JSObject done = new JSObject();
             done.put("status", "complete");
             done.put("progress", 100);
             done.put("message", "Capture complete");
             notifyListeners("captureProgress", done);
+            return;
+        }
 
+        // Emit captureComplete event with payload matching iOS
+        JSObject complete = captureResult(pixels, length, finalWidth, finalHeight, isWSQ, receivedSize,
+                quality, qualityRejected, previewOptions);
+        notifyListeners("captureComplete", complete);
+
+        // Final captureProgress event (status=complete) like iOS
+        JSObject done = new JSObject();
+        done.put("status", "complete");
+        done.put("progress", 100);
+        done.put("message", "Capture complete");
+        notifyListeners("captureProgress", done);
+    }
+
+    /** Score one burst frame; the last one resolves the capture call with the best. */
+    private void finishBurstFrame(BurstCapture burst, byte[] pixels, int length, int width, int height,
+                                  boolean decoded, boolean isWSQ, int size, QualityAnalyzer.Result quality,
+                                  PreviewEncoder.Options previewOptions, int minQuality) {
+        boolean last = burst.offer(pixels, length, width, height, decoded, isWSQ, size, quality);
+
+        JSObject progress = new JSObject();
+        progress.put("status", "burstFrame");
+        progress.put("frame", burst.getScored());
+        progress.put("frames", burst.frames);
+        progress.put("score", quality != null ? quality.score : -1);
+        progress.put("message", "Frame " + burst.getScored() + " of " + burst.frames + " captured");
+        notifyListeners("captureProgress", progress);
+
+        if (!last || !burst.settle()) {
             return;
         }
+        if (!burst.hasBest()) {
+            burst.call.reject("No burst frame could be decoded", "CAPTURE_FAILED");
+            return;
+        }
+        QualityAnalyzer.Result best = burst.getBestQuality();
+        boolean qualityRejected = best != null && minQuality > 0 && best.score < minQuality;
+        JSObject result = captureResult(burst.getBestPixels(), burst.getBestLength(), burst.getBestWidth(),
+                burst.getBestHeight(), burst.isBestWSQ(), burst.getBestSize(), best, qualityRejected,
+                previewOptions);
+        result.put("burst", burst.summary());
+        burst.call.resolve(result);
+    }
+
+    private JSObject captureResult(byte[] pixels, int length, int width, int height, boolean isWSQ, int size,
+                                   QualityAnalyzer.Result quality, boolean qualityRejected,
+                                   PreviewEncoder.Options previewOptions) {
+        JSObject complete = new JSObject();
+        complete.put("success", !qualityRejected);
+        if (quality != null) {
+            complete.put("quality", quality.toJSObject());
+        }
+        complete.put("qualityRejected", qualityRejected);
+        // A rejected image is not worth shipping across the bridge
+        if (!qualityRejected && (previewOptions == null || previewOptions.includeImageData)) {
+            // Base64 encode final image bytes (WSQ-decoded or raw)
+            complete.put("imageData", pixels != null ? Base64.encodeToString(pixels, 0, length, Base64.NO_WRAP) : "");
+        }
+        complete.put("width", width);
+        complete.put("height", height);
+        complete.put("isWSQ", isWSQ);
+        complete.put("size", size);
 
-        // Default: just forward raw data for debugging
-        JSObject dataEvent = new JSObject();
-        dataEvent.put("command", "data_received");
-        dataEvent.put("data", Base64.encodeToString(data, Base64.DEFAULT));
-        notifyListeners("dataReceived", dataEvent);
+        if (previewOptions != null && pixels != null && length >= width * height) {
+            try {
+                PreviewEncoder.Result preview = previewEncoder.encode(pixels, width, height, previewOptions);
+                complete.put("previewBase64", preview.base64);
+                complete.put("previewFormat", preview.format);
+                complete.put("previewWidth", preview.width);
+                complete.put("previewHeight", preview.height);
+                if ("png".equals(preview.format)) {
+                    complete.put("pngBase64", preview.base64);
+                }
+            } catch (Throwable t) {
+                Log.e(TAG, "Preview encoding failed", t);
+            }
+        }
+
+        complete.put("message", qualityRejected
+                ? "Image quality too low, please place the finger again"
+                : "Fingerprint captured successfully");
+        return complete;
+    }
+
+    private void finishIdentify(IdentifyRequest request, byte[] pixels, int length, int width, int height,
+                                QualityAnalyzer.Result quality, boolean qualityRejected, long startTime,
+                                long decodeStart) {
+        PluginCall call = request.call;
+        JSObject result = new JSObject();
+        JSObject timings = new JSObject();
+        timings.put("transferMs", decodeStart - startTime);
+        long extractStart = System.currentTimeMillis();
+        timings.put("decodeMs", extractStart - decodeStart);
+        if (quality != null) {
+            result.put("quality", quality.toJSObject());
+        }
+
+        if (pixels == null || qualityRejected) {
+            result.put("success", false);
+            result.put("matched", false);
+            result.put("qualityRejected", qualityRejected);
+            result.put("message", pixels == null ? "Image could not be decoded" : "Image quality too low");
+            timings.put("totalMs", extractStart - startTime);
+            result.put("timings", timings);
+            call.resolve(result);
+            return;
+        }
+
+        if (!TemplateMatcher.hasGeometry(pixels, length, width, height)) {
+            // A guessed size would extract a template that silently matches nothing
+            call.reject("Image size unknown (" + length + " bytes for " + width + "x" + height + ")",
+                    ERROR_IMAGE_GEOMETRY);
+            return;
+        }
+
+        byte[] probe = templateMatcher.extract(pixels, width, height, quality != null ? quality.score : 0);
+        long matchStart = System.currentTimeMillis();
+        timings.put("extractMs", matchStart - extractStart);
+        if (probe == null) {
+            call.reject("Template extraction failed with error: " + templateMatcher.getLastError());
+            return;
+        }
+
+        // Per subject: stops at the first sample that passes the threshold
+        SubjectIdentifier.Result best = SubjectIdentifier.identify(templateMatcher, probe, request.candidates,
+                request.threshold, request.aggregation, prefilter);
+        int bestScore = best.score;
+        Object bestId = best.subject;
+        long end = System.currentTimeMillis();
+        timings.put("matchMs", end - matchStart);
+        timings.put("totalMs", end - startTime);
+
+        boolean matched = bestScore >= request.threshold && bestId != null;
+        result.put("success", true);
+        result.put("matched", matched);
+        result.put("id", matched ? bestId : null);
+        result.put("score", bestScore);
+        result.put("threshold", request.threshold);
+        result.put("matcherCalls", best.matcherCalls);
+        result.put("prefiltered", best.held);
+        result.put("timings", timings);
+        call.resolve(result);
     }
 
     // Additional methods for fingerprint operations would go here
@@ -0,0 +1,107 @@
+package com.myduchospital.plugins.secugenble;
+
+import android.util.Log;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Protocol session state, advanced on the protocol thread and read from
+ * plugin calls and the image thread. Only one operation talks to the reader
+ * at a time:
+ *
+ *   IDLE -> CAPTURE_AWAITING_HEADER -> CAPTURE_RECEIVING -> IDLE
+ *   IDLE -> TEMPLATE_AWAITING_HEADER -> TEMPLATE_RECEIVING -> IDLE
+ *   IDLE -> COMMAND_PENDING -> IDLE
+ *
+ * Every awaiting/receiving state may also fall back to IDLE (error, timeout,
+ * cancel). A transfer is never rewound: commands are only re-sent while their
+ * header is still awaited. Transitions are single compare-and-set operations,
+ * so the packet path never takes a lock. A transition attempted from the
+ * wrong state is refused and counted as illegal.
+ */
+class SessionState {
+
+    private static final String TAG = "SecuGenBLEPlugin";
+
+    static final int IDLE = 0;
+    static final int CAPTURE_AWAITING_HEADER = 1;
+    static final int CAPTURE_RECEIVING = 2;
+    static final int TEMPLATE_AWAITING_HEADER = 3;
+    static final int TEMPLATE_RECEIVING = 4;
+    static final int COMMAND_PENDING = 5;
+
+    private static final String[] NAMES = {
+        "idle",
+        "captureAwaitingHeader",
+        "captureReceiving",
+        "templateAwaitingHeader",
+        "templateReceiving",
+        "commandPending"
+    };
+
+    // Bit set of allowed target states, indexed by source state
+    private static final int[] ALLOWED = {
+        bit(CAPTURE_AWAITING_HEADER) | bit(TEMPLATE_AWAITING_HEADER) | bit(COMMAND_PENDING),
+        bit(CAPTURE_RECEIVING) | bit(IDLE),
+        bit(IDLE),
+        bit(TEMPLATE_RECEIVING) | bit(IDLE),
+        bit(IDLE),
+        bit(IDLE)
+    };
+
+    private final AtomicInteger state = new AtomicInteger(IDLE);
+    private final AtomicLong illegalTransitions = new AtomicLong();
+
+    private static int bit(int state) {
+        return 1 << state;
+    }
+
+    int get() {
+        return state.get();
+    }
+
+    boolean is(int expected) {
+        return state.get() == expected;
+    }
+
+    /**
+     * Start an operation from IDLE. Returns false, without counting it as
+     * illegal, when another operation is in progress.
+     */
+    boolean claim(int to) {
+        return state.compareAndSet(IDLE, to);
+    }
+
+    /**
+     * Move from {@code from} to {@code to}. Refused and counted when the session
+     * is not in {@code from} (e.g. it was cancelled meanwhile) or the transition
+     * is not part of the protocol.
+     */
+    boolean advance(int from, int to) {
+        if ((ALLOWED[from] & bit(to)) == 0 || !state.compareAndSet(from, to)) {
+            reportIllegal(to);
+            return false;
+        }
+        return true;
+    }
+
+    /** Force IDLE (disconnect). Returns the state that was left. */
+    int reset() {
+        return state.getAndSet(IDLE);
+    }
+
+    void reportIllegal(int attempted) {
+        long count = illegalTransitions.incrementAndGet();
+        Log.w(TAG, "Illegal session transition " + name(state.get()) + " -> " + name(attempted)
+                + " (total " + count + ")");
+    }
+
+    long getIllegalTransitions() {
+        return illegalTransitions.get();
+    }
+
+    static String name(int state) {
+        return state >= 0 && state < NAMES.length ? NAMES[state] : "unknown";
+    }
+}
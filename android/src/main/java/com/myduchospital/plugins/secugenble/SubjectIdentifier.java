@@ -0,0 +1,210 @@
+package com.myduchospital.plugins.secugenble;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+
+import java.util.Arrays;
+
+/**
+ * 1:N identification over a subject-grouped {@link TemplateGallery}. Each
+ * subject gets one aggregated score:
+ *
+ *   max   - the best sample score
+ *   fused - the mean of the two best sample scores (a single sample counts
+ *           on its own), so a subject needs corroborating samples to lead
+ *
+ * A subject's remaining samples are skipped once its score reaches the
+ * threshold; for fused that needs at least two scored samples. Samples the
+ * {@link TemplatePrefilter} holds back are skipped or scored last.
+ *
+ * {@link #identifySamples} treats every template as a subject of its own, in
+ * input order, for callers that want one score per candidate.
+ */
+final class SubjectIdentifier {
+
+    static final int AGGREGATE_MAX = 0;
+    static final int AGGREGATE_FUSED = 1;
+
+    static final class Result {
+        Object subject;
+        int score = -1;
+        int matcherCalls;
+        int held;
+        int[] subjectScores;
+        boolean perSample;
+
+        /** Per subject; per sample only the scored ones, like the plain matcher loop. */
+        JSArray scoresToJSArray(TemplateGallery gallery) {
+            JSArray scores = new JSArray();
+            for (int s = 0; s < subjectScores.length; s++) {
+                if (perSample && subjectScores[s] < 0) {
+                    continue;
+                }
+                JSObject entry = new JSObject();
+                entry.put("id", perSample ? gallery.idAt(s) : gallery.subjectAt(s));
+                entry.put("score", subjectScores[s]);
+                scores.put(entry);
+            }
+            return scores;
+        }
+    }
+
+    private final TemplateMatcher matcher;
+    private final byte[] probe;
+    private final TemplateGallery gallery;
+    private final int threshold;
+    private final int aggregation;
+    private final boolean perSample;
+    private final int[] best;
+    private final int[] second;
+    private final Result result = new Result();
+
+    private SubjectIdentifier(TemplateMatcher matcher, byte[] probe, TemplateGallery gallery,
+                              int threshold, int aggregation, boolean perSample) {
+        this.matcher = matcher;
+        this.probe = probe;
+        this.gallery = gallery;
+        this.threshold = threshold;
+        this.aggregation = aggregation;
+        this.perSample = perSample;
+        int subjects = subjectCount();
+        this.best = new int[subjects];
+        this.second = new int[subjects];
+        Arrays.fill(best, -1);
+        Arrays.fill(second, -1);
+        result.subjectScores = new int[subjects];
+        result.perSample = perSample;
+        Arrays.fill(result.subjectScores, -1);
+    }
+
+    static int aggregation(String name) {
+        return "fused".equals(name) ? AGGREGATE_FUSED : AGGREGATE_MAX;
+    }
+
+    /** {@code prefilter} may be null. */
+    static Result identify(TemplateMatcher matcher, byte[] probe, TemplateGallery gallery,
+                           int threshold, int aggregation, TemplatePrefilter prefilter) {
+        return new SubjectIdentifier(matcher, probe, gallery, threshold, aggregation, false).run(prefilter);
+    }
+
+    /** One score per template; {@code prefilter} may be null. */
+    static Result identifySamples(TemplateMatcher matcher, byte[] probe, TemplateGallery gallery,
+                                  int threshold, TemplatePrefilter prefilter) {
+        return new SubjectIdentifier(matcher, probe, gallery, threshold, AGGREGATE_MAX, true).run(prefilter);
+    }
+
+    private int subjectCount() {
+        return perSample ? gallery.size() : gallery.subjectCount();
+    }
+
+    private int subjectStart(int s) {
+        return perSample ? s : gallery.subjectStart(s);
+    }
+
+    private int subjectEnd(int s) {
+        return perSample ? s + 1 : gallery.subjectEnd(s);
+    }
+
+    private int memberAt(int k) {
+        return perSample ? k : gallery.memberAt(k);
+    }
+
+    private int subjectOf(int i) {
+        return perSample ? i : gallery.subjectOf(i);
+    }
+
+    private Result run(TemplatePrefilter prefilter) {
+        int mode = prefilter != null ? prefilter.getMode() : TemplatePrefilter.MODE_OFF;
+        int probeSignature = TemplateSignature.NONE;
+        boolean audit = false;
+        if (mode != TemplatePrefilter.MODE_OFF) {
+            probeSignature = TemplateSignature.of(probe, 0, probe.length);
+            if (probeSignature == TemplateSignature.NONE) {
+                prefilter.recordUnsupported();
+                mode = TemplatePrefilter.MODE_OFF;
+            } else {
+                audit = prefilter.nextAudit();
+            }
+        }
+        double minRatio = mode != TemplatePrefilter.MODE_OFF ? prefilter.getMinRatio() : 0;
+
+        int[] held = mode != TemplatePrefilter.MODE_OFF ? new int[gallery.size()] : null;
+        int heldCount = 0;
+        for (int s = 0; s < subjectCount(); s++) {
+            for (int k = subjectStart(s); k < subjectEnd(s); k++) {
+                int i = memberAt(k);
+                if (held != null && !TemplatePrefilter.accepts(probeSignature, gallery.signatureAt(i), minRatio)) {
+                    held[heldCount++] = i;
+                    continue;
+                }
+                if (offer(s, i)) {
+                    break;
+                }
+            }
+        }
+        pickBest();
+        if (mode == TemplatePrefilter.MODE_OFF) {
+            return result;
+        }
+
+        result.held = heldCount;
+        int deferred = 0;
+        boolean rescued = false;
+        if (mode == TemplatePrefilter.MODE_DEFER && result.score < threshold) {
+            // Nothing passed: the held candidates get their turn
+            for (int k = 0; k < heldCount; k++) {
+                int i = held[k];
+                int s = subjectOf(i);
+                if (!passed(s)) {
+                    offer(s, i);
+                    deferred++;
+                }
+            }
+            pickBest();
+            rescued = result.score >= threshold;
+        }
+        prefilter.record(gallery.size(), heldCount, deferred, rescued);
+
+        if (audit && heldCount > 0) {
+            // Measure what skip cost this time; the result stays as it is
+            int misses = 0;
+            for (int k = 0; k < heldCount; k++) {
+                int i = held[k];
+                if (matcher.score(probe, gallery.arena(), gallery.offsetAt(i), gallery.lengthAt(i)) >= threshold) {
+                    misses++;
+                }
+            }
+            prefilter.recordAudit(heldCount, misses, misses > 0 && result.score < threshold);
+        }
+        return result;
+    }
+
+    /** Scores sample {@code i} of subject {@code s}; true once the subject passes. */
+    private boolean offer(int s, int i) {
+        int sample = matcher.score(probe, gallery.arena(), gallery.offsetAt(i), gallery.lengthAt(i));
+        result.matcherCalls++;
+        if (sample > best[s]) {
+            second[s] = best[s];
+            best[s] = sample;
+        } else if (sample > second[s]) {
+            second[s] = sample;
+        }
+        result.subjectScores[s] = aggregation == AGGREGATE_FUSED && second[s] >= 0
+                ? (best[s] + second[s]) / 2
+                : best[s];
+        return passed(s);
+    }
+
+    private boolean passed(int s) {
+        return result.subjectScores[s] >= threshold && (aggregation == AGGREGATE_MAX || second[s] >= 0);
+    }
+
+    private void pickBest() {
+        for (int s = 0; s < result.subjectScores.length; s++) {
+            if (result.subjectScores[s] > result.score) {
+                result.score = result.subjectScores[s];
+                result.subject = perSample ? gallery.idAt(s) : gallery.subjectAt(s);
+            }
+        }
+    }
+}
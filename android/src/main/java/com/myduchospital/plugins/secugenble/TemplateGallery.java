@@ -0,0 +1,244 @@
+package com.myduchospital.plugins.secugenble;
+
+import android.util.Base64;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable set of decoded candidate templates held on the native side so
+ * identification does not need the gallery to cross the bridge on every call.
+ * Replace the whole gallery to change it.
+ *
+ * Templates keep the order the candidates were given in. Subjects (the
+ * candidate's {@code subject}, else its {@code id}) are an index on top: the
+ * samples of subject s are {@code memberAt(k)} for k in
+ * {@code subjectStart(s) .. subjectEnd(s)}.
+ *
+ * All template bytes live back to back in one arena, described by parallel
+ * offset / length / subject / signature arrays. A gallery of thousands of
+ * templates is a handful of objects, scans walk memory in order, and worker
+ * threads share the arena read-only without copying it.
+ */
+class TemplateGallery {
+
+    static final TemplateGallery EMPTY = new TemplateGallery(new Object[0], new byte[0], new int[0], new int[0],
+            new int[0], new int[0], new Object[0], new int[0], new int[] {0});
+
+    private final Object[] ids;
+    private final byte[] arena;
+    private final int[] offsets;
+    private final int[] lengths;
+    private final int[] subjectOf;     // template index -> subject index
+    private final int[] signatures;    // TemplateSignature per template, for the prefilter
+    private final Object[] subjects;
+    private final int[] members;       // template indexes grouped by subject
+    private final int[] subjectStarts; // subjects.length + 1 entries into members
+
+    private TemplateGallery(Object[] ids, byte[] arena, int[] offsets, int[] lengths, int[] subjectOf,
+                            int[] signatures, Object[] subjects, int[] members, int[] subjectStarts) {
+        this.ids = ids;
+        this.arena = arena;
+        this.offsets = offsets;
+        this.lengths = lengths;
+        this.subjectOf = subjectOf;
+        this.signatures = signatures;
+        this.subjects = subjects;
+        this.members = members;
+        this.subjectStarts = subjectStarts;
+    }
+
+    /**
+     * Decodes {@code [{ id, subject?, template }]} entries. Entries without a
+     * template or with invalid Base64 are skipped, like matchTemplates does.
+     */
+    static TemplateGallery fromCandidates(JSArray candidates) {
+        List<Object> ids = new ArrayList<>();
+        List<byte[]> templates = new ArrayList<>();
+        List<Object> subjects = new ArrayList<>();
+        if (candidates == null) {
+            return EMPTY;
+        }
+
+        for (int i = 0; i < candidates.length(); i++) {
+            Object item = candidates.opt(i);
+            if (!(item instanceof JSObject)) {
+                continue;
+            }
+
+            JSObject candidate = (JSObject) item;
+            String templateBase64 = candidate.optString("template", null);
+            if (templateBase64 == null || templateBase64.isEmpty()) {
+                continue;
+            }
+
+            try {
+                templates.add(Base64.decode(templateBase64, Base64.DEFAULT));
+                ids.add(candidate.opt("id"));
+                subjects.add(candidate.has("subject") ? candidate.opt("subject") : candidate.opt("id"));
+            } catch (IllegalArgumentException e) {
+                // skip invalid entry
+            }
+        }
+        return packed(ids, templates, subjects);
+    }
+
+    /**
+     * Hash of the raw {@code [{ id, subject?, template }]} entries, equal for
+     * equal content. It keys {@link ProbeResultCache} entries without the
+     * Base64 decode and packing of {@link #fromCandidates}.
+     */
+    static long candidatesHash(JSArray candidates) {
+        long hash = ProbeResultCache.FNV_OFFSET;
+        if (candidates == null) {
+            return hash;
+        }
+        for (int i = 0; i < candidates.length(); i++) {
+            Object item = candidates.opt(i);
+            if (!(item instanceof JSObject)) {
+                hash = ProbeResultCache.mix(hash, -1);
+                continue;
+            }
+            JSObject candidate = (JSObject) item;
+            String template = candidate.optString("template", "");
+            Object id = candidate.opt("id");
+            Object subject = candidate.has("subject") ? candidate.opt("subject") : id;
+            hash = ProbeResultCache.hash(hash, template);
+            hash = ProbeResultCache.mix(hash, template.length());
+            hash = ProbeResultCache.mix(hash, id != null ? id.hashCode() : 0);
+            hash = ProbeResultCache.mix(hash, subject != null ? subject.hashCode() : 0);
+        }
+        return hash;
+    }
+
+    /**
+     * Candidate count followed by each candidate's template string length:
+     * compared exactly on a {@link ProbeResultCache} hit, next to
+     * {@link #candidatesHash}.
+     */
+    static int[] candidatesShape(JSArray candidates) {
+        int count = candidates != null ? candidates.length() : 0;
+        int[] shape = new int[count + 1];
+        shape[0] = count;
+        for (int i = 0; i < count; i++) {
+            Object item = candidates.opt(i);
+            shape[i + 1] = item instanceof JSObject ? ((JSObject) item).optString("template", "").length() : -1;
+        }
+        return shape;
+    }
+
+    /**
+     * Lays the decoded templates out in the arena in input order and indexes
+     * them by subject, subjects in first-seen order. The per-entry arrays are
+     * garbage once this returns.
+     */
+    private static TemplateGallery packed(List<Object> ids, List<byte[]> templates, List<Object> subjects) {
+        int count = templates.size();
+        Map<Object, List<Integer>> bySubject = new LinkedHashMap<>();
+        List<Object> order = new ArrayList<>();
+        int[] subjectOf = new int[count];
+        int arenaSize = 0;
+        for (int i = 0; i < count; i++) {
+            Object subject = subjects.get(i);
+            // Entries without any id stay subjects of their own
+            Object key = subject != null ? subject : new Object();
+            List<Integer> group = bySubject.get(key);
+            if (group == null) {
+                group = new ArrayList<>();
+                bySubject.put(key, group);
+                order.add(subject);
+            }
+            group.add(i);
+            subjectOf[i] = order.size() - 1;
+            arenaSize += templates.get(i).length;
+        }
+
+        byte[] arena = new byte[arenaSize];
+        int[] offsets = new int[count];
+        int[] lengths = new int[count];
+        int[] signatures = new int[count];
+        int offset = 0;
+        for (int i = 0; i < count; i++) {
+            byte[] template = templates.get(i);
+            System.arraycopy(template, 0, arena, offset, template.length);
+            offsets[i] = offset;
+            lengths[i] = template.length;
+            signatures[i] = TemplateSignature.of(template, 0, template.length);
+            offset += template.length;
+        }
+
+        int[] members = new int[count];
+        int[] starts = new int[order.size() + 1];
+        int k = 0;
+        int s = 0;
+        for (List<Integer> group : bySubject.values()) {
+            starts[s++] = k;
+            for (int i : group) {
+                members[k++] = i;
+            }
+        }
+        starts[s] = k;
+
+        return new TemplateGallery(ids.toArray(), arena, offsets, lengths, subjectOf, signatures,
+                order.toArray(), members, starts);
+    }
+
+    int size() {
+        return offsets.length;
+    }
+
+    Object idAt(int index) {
+        return ids[index];
+    }
+
+    /** The shared template bytes; read-only, see {@link #offsetAt} / {@link #lengthAt}. */
+    byte[] arena() {
+        return arena;
+    }
+
+    int offsetAt(int index) {
+        return offsets[index];
+    }
+
+    int lengthAt(int index) {
+        return lengths[index];
+    }
+
+    int subjectOf(int index) {
+        return subjectOf[index];
+    }
+
+    int signatureAt(int index) {
+        return signatures[index];
+    }
+
+    int subjectCount() {
+        return subjects.length;
+    }
+
+    Object subjectAt(int subject) {
+        return subjects[subject];
+    }
+
+    /** Template index at {@code position} of the subject-grouped order. */
+    int memberAt(int position) {
+        return members[position];
+    }
+
+    int subjectStart(int subject) {
+        return subjectStarts[subject];
+    }
+
+    int subjectEnd(int subject) {
+        return subjectStarts[subject + 1];
+    }
+
+    long arenaBytes() {
+        return arena.length;
+    }
+}
@@ -0,0 +1,156 @@
+package com.myduchospital.plugins.secugenble;
+
+import android.content.Context;
+import android.hardware.usb.UsbManager;
+import android.util.Log;
+
+import SecuGen.FDxSDKPro.JSGFPLib;
+import SecuGen.FDxSDKPro.SGFDxDeviceName;
+import SecuGen.FDxSDKPro.SGFDxErrorCode;
+import SecuGen.FDxSDKPro.SGFDxSecurityLevel;
+import SecuGen.FDxSDKPro.SGFingerInfo;
+
+import java.util.Arrays;
+
+/**
+ * Thin wrapper around one FDxSDKPro {@link JSGFPLib} instance used for template
+ * extraction and matching. The native library is not re-entrant, so every
+ * call on an instance is serialized.
+ */
+class TemplateMatcher {
+
+    private static final String TAG = "SecuGenBLEPlugin";
+
+    // BLE readers deliver 500 dpi images
+    static final int IMAGE_DPI = 500;
+
+    private final JSGFPLib lib;
+    private final boolean[] matchedHolder = new boolean[1];
+    private final int[] scoreHolder = new int[1];
+    private byte[] templateBuffer;
+    private byte[] candidateBuffer = new byte[0];
+    private int candidateUsed = 0;
+    private long lastError = SGFDxErrorCode.SGFDX_ERROR_NONE;
+    // No USB device is attached, so Init never learns the image size
+    private int imageWidth = 0;
+    private int imageHeight = 0;
+
+    private TemplateMatcher(JSGFPLib lib) {
+        this.lib = lib;
+    }
+
+    /** Returns null when the FDxSDKPro library cannot be initialized. */
+    static TemplateMatcher create(Context context) {
+        try {
+            UsbManager usbManager = (UsbManager) context.getSystemService(Context.USB_SERVICE);
+            JSGFPLib lib = new JSGFPLib(context, usbManager);
+
+            long initResult = lib.Init(SGFDxDeviceName.SG_DEV_AUTO);
+            if (initResult != SGFDxErrorCode.SGFDX_ERROR_NONE) {
+                Log.e(TAG, "JSGFPLib Init failed: " + initResult);
+                return null;
+            }
+
+            return new TemplateMatcher(lib);
+        } catch (Throwable t) {
+            Log.e(TAG, "Failed to initialize JSGFPLib matcher", t);
+            return null;
+        }
+    }
+
+    /**
+     * Runs MatchTemplate followed by GetMatchingScore. Returns the score, or -1
+     * when either call fails (see {@link #getLastError()}).
+     */
+    synchronized int score(byte[] probe, byte[] candidate) {
+        lastError = lib.MatchTemplate(probe, candidate, SGFDxSecurityLevel.SL_NORMAL, matchedHolder);
+        if (lastError != SGFDxErrorCode.SGFDX_ERROR_NONE) {
+            return -1;
+        }
+        lastError = lib.GetMatchingScore(probe, candidate, scoreHolder);
+        if (lastError != SGFDxErrorCode.SGFDX_ERROR_NONE) {
+            return -1;
+        }
+        return scoreHolder[0];
+    }
+
+    /**
+     * Scores against a template stored at {@code arena[offset .. offset+length)}.
+     * The library only takes whole arrays, so the template is copied into a
+     * reused scratch buffer; any tail left by a longer previous template is
+     * cleared (the template header carries its own size).
+     */
+    synchronized int score(byte[] probe, byte[] arena, int offset, int length) {
+        if (candidateBuffer.length < length) {
+            candidateBuffer = new byte[length];
+        } else if (candidateUsed > length) {
+            Arrays.fill(candidateBuffer, length, candidateUsed, (byte) 0);
+        }
+        System.arraycopy(arena, offset, candidateBuffer, 0, length);
+        candidateUsed = length;
+        return score(probe, candidateBuffer);
+    }
+
+    /** MatchTemplate verdict of the last successful {@link #score} call. */
+    synchronized boolean lastMatched() {
+        return matchedHolder[0];
+    }
+
+    /** True when {@code image} holds exactly {@code width} x {@code height} pixels. */
+    static boolean hasGeometry(byte[] image, int length, int width, int height) {
+        return image != null && width > 0 && height > 0 && length == width * height && image.length >= length;
+    }
+
+    /**
+     * Extracts a minutiae template from an 8-bit grayscale image of the given
+     * size, re-initializing the library with InitEx when the size changes.
+     * Returns a right-sized copy, or null on failure (see {@link #getLastError()}).
+     */
+    synchronized byte[] extract(byte[] image, int width, int height, int imageQuality) {
+        if (!hasGeometry(image, width * height, width, height)) {
+            lastError = SGFDxErrorCode.SGFDX_ERROR_INVALID_PARAM;
+            return null;
+        }
+        if (width != imageWidth || height != imageHeight) {
+            lastError = lib.InitEx(width, height, IMAGE_DPI);
+            if (lastError != SGFDxErrorCode.SGFDX_ERROR_NONE) {
+                imageWidth = 0;
+                imageHeight = 0;
+                return null;
+            }
+            imageWidth = width;
+            imageHeight = height;
+            templateBuffer = null;
+        }
+
+        if (templateBuffer == null) {
+            int[] maxSize = new int[1];
+            lastError = lib.GetMaxTemplateSize(maxSize);
+            if (lastError != SGFDxErrorCode.SGFDX_ERROR_NONE || maxSize[0] <= 0) {
+                return null;
+            }
+            templateBuffer = new byte[maxSize[0]];
+        }
+
+        SGFingerInfo fingerInfo = new SGFingerInfo();
+        fingerInfo.ImageQuality = imageQuality;
+        lastError = lib.CreateTemplate(fingerInfo, image, templateBuffer);
+        if (lastError != SGFDxErrorCode.SGFDX_ERROR_NONE) {
+            return null;
+        }
+
+        int[] size = new int[1];
+        lastError = lib.GetTemplateSize(templateBuffer, size);
+        if (lastError != SGFDxErrorCode.SGFDX_ERROR_NONE || size[0] <= 0) {
+            return null;
+        }
+
+        byte[] template = new byte[size[0]];
+        System.arraycopy(templateBuffer, 0, template, 0, size[0]);
+        return template;
+    }
+
+    synchronized long getLastError() {
+        return lastError;
+    }
+}
@@ -0,0 +1,141 @@
+package com.myduchospital.plugins.secugenble;
+
+import com.getcapacitor.JSObject;
+
+/**
+ * Optional stage in front of the FDxSDKPro matcher for 1:N identification.
+ * A candidate whose minutiae count is too far from the probe's (ratio of the
+ * smaller to the larger below {@code minRatio}) is held back:
+ *
+ *   skip  - never scored
+ *   defer - scored only if nothing else reached the threshold
+ *
+ * Templates without a {@link TemplateSignature} are always scored.
+ *
+ * The false-reject cost is measured rather than assumed. In defer mode every
+ * held candidate that rescues an identification is one skip would have lost.
+ * In skip mode every {@code auditEvery}-th identification scores its held
+ * candidates afterwards (without changing its result) and counts those that
+ * would have passed.
+ */
+class TemplatePrefilter {
+
+    static final int MODE_OFF = 0;
+    static final int MODE_SKIP = 1;
+    static final int MODE_DEFER = 2;
+
+    private static final String[] NAMES = {"off", "skip", "defer"};
+
+    private volatile int mode = MODE_OFF;
+    private volatile double minRatio = 0.5;
+    private volatile int auditEvery = 0;
+
+    private long identifications;
+    private long unsupported;
+    private long candidates;
+    private long held;
+    private long deferredScored;
+    private long rescued;
+    private long audited;
+    private long auditedCandidates;
+    private long auditMisses;
+    private long auditFalseRejects;
+
+    void configure(int mode, double minRatio, int auditEvery) {
+        this.minRatio = minRatio;
+        this.auditEvery = Math.max(0, auditEvery);
+        this.mode = mode;
+    }
+
+    static int mode(String name) {
+        for (int i = 0; i < NAMES.length; i++) {
+            if (NAMES[i].equals(name)) {
+                return i;
+            }
+        }
+        return MODE_OFF;
+    }
+
+    int getMode() {
+        return mode;
+    }
+
+    double getMinRatio() {
+        return minRatio;
+    }
+
+    static boolean accepts(int probe, int candidate, double minRatio) {
+        if (probe == TemplateSignature.NONE || candidate == TemplateSignature.NONE) {
+            return true;
+        }
+        int a = TemplateSignature.minutiae(probe);
+        int b = TemplateSignature.minutiae(candidate);
+        int larger = Math.max(a, b);
+        return larger == 0 || Math.min(a, b) >= minRatio * larger;
+    }
+
+    /** True when this identification should audit its skipped candidates. */
+    synchronized boolean nextAudit() {
+        identifications++;
+        return mode == MODE_SKIP && auditEvery > 0 && identifications % auditEvery == 0;
+    }
+
+    synchronized void recordUnsupported() {
+        identifications++;
+        unsupported++;
+    }
+
+    synchronized void record(int candidateCount, int heldCount, int deferredCount, boolean rescuedMatch) {
+        candidates += candidateCount;
+        held += heldCount;
+        deferredScored += deferredCount;
+        if (rescuedMatch) {
+            rescued++;
+        }
+    }
+
+    synchronized void recordAudit(int heldCount, int misses, boolean falseReject) {
+        audited++;
+        auditedCandidates += heldCount;
+        auditMisses += misses;
+        if (falseReject) {
+            auditFalseRejects++;
+        }
+    }
+
+    synchronized void reset() {
+        identifications = 0;
+        unsupported = 0;
+        candidates = 0;
+        held = 0;
+        deferredScored = 0;
+        rescued = 0;
+        audited = 0;
+        auditedCandidates = 0;
+        auditMisses = 0;
+        auditFalseRejects = 0;
+    }
+
+    synchronized JSObject toJSObject() {
+        JSObject stats = new JSObject();
+        stats.put("mode", NAMES[mode]);
+        stats.put("minRatio", minRatio);
+        stats.put("auditEvery", auditEvery);
+        stats.put("identifications", identifications);
+        stats.put("unsupported", unsupported);
+        stats.put("candidates", candidates);
+        stats.put("held", held);
+        stats.put("heldRate", candidates > 0 ? (double) held / candidates : 0);
+        stats.put("deferredScored", deferredScored);
+        stats.put("rescued", rescued);
+        stats.put("audited", audited);
+        stats.put("auditedCandidates", auditedCandidates);
+        stats.put("auditMisses", auditMisses);
+        stats.put("auditFalseRejects", auditFalseRejects);
+        // Share of identifications the prefilter turned into a reject
+        long measured = mode == MODE_DEFER ? identifications - unsupported : audited;
+        long lost = mode == MODE_DEFER ? rescued : auditFalseRejects;
+        stats.put("falseRejectRate", measured > 0 ? (double) lost / measured : 0);
+        return stats;
+    }
+}
@@ -0,0 +1,58 @@
+package com.myduchospital.plugins.secugenble;
+
+/**
+ * Compact signature of a minutiae template read from its record header: the
+ * minutiae count of the first finger view.
+ *
+ * Only ANSI INCITS 378 and ISO/IEC 19794-2 records ("FMR\0") expose this
+ * field. Both start with the same magic, so the layout is chosen by which
+ * record length field matches the template length:
+ *
+ *   ANSI, 2-byte length at 8  -> view header at 26
+ *   ANSI, 0 then 4-byte at 10 -> view header at 30
+ *   ISO,  4-byte length at 8  -> view header at 24
+ *
+ * The view header is position, view/impression, quality, minutiae count.
+ * Anything else (e.g. SecuGen SG400) has no signature.
+ */
+final class TemplateSignature {
+
+    static final int NONE = -1;
+
+    private TemplateSignature() {
+    }
+
+    static int of(byte[] template, int offset, int length) {
+        if (template == null || length < 32
+                || template[offset] != 'F' || template[offset + 1] != 'M'
+                || template[offset + 2] != 'R' || template[offset + 3] != 0) {
+            return NONE;
+        }
+
+        int view;
+        int length16 = u16(template, offset + 8);
+        if (length16 == length) {
+            view = 26;
+        } else if (length16 == 0 && u32(template, offset + 10) == length) {
+            view = 30;
+        } else if (u32(template, offset + 8) == length) {
+            view = 24;
+        } else {
+            return NONE;
+        }
+
+        return template[offset + view + 3] & 0xFF;
+    }
+
+    static int minutiae(int signature) {
+        return signature;
+    }
+
+    private static int u16(byte[] b, int i) {
+        return (b[i] & 0xFF) << 8 | (b[i + 1] & 0xFF);
+    }
+
+    private static long u32(byte[] b, int i) {
+        return (long) u16(b, i) << 16 | u16(b, i + 2);
+    }
+}
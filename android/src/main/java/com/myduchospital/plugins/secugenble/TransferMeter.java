@@ -0,0 +1,89 @@
+package com.myduchospital.plugins.secugenble;
+
+import com.getcapacitor.JSObject;
+
+/**
+ * Payload throughput per transfer mode, from the data header to the last
+ * chunk, so the read strategies can be compared on the same reader.
+ */
+class TransferMeter {
+
+    static final int MODE_NOTIFY_READ = 0;  // notify trigger, then one read per chunk
+    static final int MODE_PIPELINED = 1;    // next read issued as soon as the last one lands
+    static final int MODE_STREAMED = 2;     // reader pushes payload in notifications
+    private static final int MODES = 3;
+
+    private static final String[] NAMES = {"notifyRead", "pipelined", "streamed"};
+
+    private final long[] transfers = new long[MODES];
+    private final long[] bytes = new long[MODES];
+    private final long[] chunks = new long[MODES];
+    private final long[] nanos = new long[MODES];
+
+    // Transfer in progress (protocol thread only)
+    private long startNanos;
+    private int currentChunks;
+    private boolean active = false;
+
+    void start() {
+        startNanos = System.nanoTime();
+        currentChunks = 0;
+        active = true;
+    }
+
+    void chunk() {
+        currentChunks++;
+    }
+
+    /** Returns the transfer time in nanoseconds, or -1 if nothing was being measured. */
+    long finish(int mode, int transferBytes) {
+        if (!active) {
+            return -1;
+        }
+        active = false;
+        long elapsed = System.nanoTime() - startNanos;
+        synchronized (this) {
+            transfers[mode]++;
+            bytes[mode] += transferBytes;
+            chunks[mode] += currentChunks;
+            nanos[mode] += elapsed;
+        }
+        return elapsed;
+    }
+
+    void cancel() {
+        active = false;
+    }
+
+    static String name(int mode) {
+        return NAMES[mode];
+    }
+
+    static double kBps(long transferBytes, long elapsedNanos) {
+        return elapsedNanos > 0 ? transferBytes / 1024.0 / (elapsedNanos / 1e9) : 0;
+    }
+
+    synchronized JSObject toJSObject() {
+        JSObject result = new JSObject();
+        for (int mode = 0; mode < MODES; mode++) {
+            JSObject stats = new JSObject();
+            stats.put("transfers", transfers[mode]);
+            stats.put("bytes", bytes[mode]);
+            stats.put("chunks", chunks[mode]);
+            stats.put("totalMs", nanos[mode] / 1_000_000.0);
+            stats.put("throughputKBps", kBps(bytes[mode], nanos[mode]));
+            stats.put("msPerChunk", chunks[mode] > 0 ? nanos[mode] / 1_000_000.0 / chunks[mode] : 0);
+            result.put(NAMES[mode], stats);
+        }
+        return result;
+    }
+
+    synchronized void reset() {
+        for (int mode = 0; mode < MODES; mode++) {
+            transfers[mode] = 0;
+            bytes[mode] = 0;
+            chunks[mode] = 0;
+            nanos[mode] = 0;
+        }
+    }
+}
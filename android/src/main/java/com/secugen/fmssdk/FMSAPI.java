@@ -123,85 +123,45 @@ public class FMSAPI {
 		return(header.get());
 	}
 
+	public static byte[] cmdDBGetRecCount()
+	{
+		FMSHeader header = new FMSHeader();
+		header.pkt_command = CMD_DB_GET_RECCOUNT;
+		header.setCheckSum();
+		return(header.get());
+	}
+	public static byte[] cmdDBDeleteAll()
+	{
+		FMSHeader header = new FMSHeader();
+		header.pkt_command = CMD_DB_DELETE_ALL;
+		header.setCheckSum();
+		return(header.get());
+	}
+	public static byte[] cmdFPAutoIdentifyStart()
+	{
+		FMSHeader header = new FMSHeader();
+		header.pkt_command = CMD_FP_AUTO_IDENTIFY_START;
+		header.setCheckSum();
+		return(header.get());
+	}
+	public static byte[] cmdFPAutoIdentifyStop()
+	{
+		FMSHeader header = new FMSHeader();
+		header.pkt_command = CMD_FP_AUTO_IDENTIFY_STOP;
+		header.setCheckSum();
+		return(header.get());
+	}
+
+	// Kept for SDK callers; the plugin decodes into a reused FMSResponse instead
 	public static String parseResponse(byte[] buffer)
 	{
-		
 		byte checksum = FMSHeader.GetCheckSum(buffer, 11);
 		if (checksum != buffer[11])
-			return new String("Cksm Err: [" + Integer.toHexString((int) buffer[11]) + "][" + Integer.toHexString((int) checksum) + "]");
-		else
-		{		
-			FMSHeader header = new FMSHeader(buffer);
-			switch(buffer[1])
-			{
-				case CMD_GET_VERSION:
-					if (buffer[10] != ERR_NONE)
-						return new String("Error: [" + Integer.toHexString((int) buffer[10])  + "]");
-					else
-					{
-						String versionMajor = Integer.toHexString(header.pkt_param1);
-						String versionMinor = Integer.toHexString(header.pkt_param2);
-						return new String("F/W ver " + versionMajor + "." + versionMinor);
-					}
-				case CMD_FP_REGISTER_START:
-					switch(buffer[10])
-					{
-						case ERR_NONE:
-							return new String("Capture 1 OK. Place same finger and click Register 2");
-						case ERR_ALREADY_REGISTERED_USER:
-							return new String("User " + Integer.valueOf(header.pkt_param1) + " already registered");			
-						default:
-							return new String("Error: [" + Integer.toHexString((int) buffer[10])  + "]");
-					}
-				case CMD_FP_REGISTER_END:
-					if (buffer[10] != ERR_NONE)
-						return new String("Error: [" + Integer.toHexString((int) buffer[10])  + "]");
-					else
-						return new String("Registration was successful");			
-				case CMD_FP_DELETE:
-					switch(buffer[10])
-					{
-						case ERR_NONE:
-							return new String("User " + Integer.valueOf(header.pkt_param1) + " deleted");
-						case ERR_USER_NOT_FOUND:
-							return new String("User " + Integer.valueOf(header.pkt_param1) + " not found");			
-						default:
-							return new String("Error: [" + Integer.toHexString((int) buffer[10])  + "]");
-					}
-				case CMD_FP_VERIFY:
-					switch(buffer[10])
-					{
-						case ERR_NONE:
-							return new String("User " + Integer.valueOf(header.pkt_param1) + " verified. Score:[" + header.pkt_param2 + "]");
-						case ERR_VERIFY_FAILED:
-							return new String("User " + Integer.valueOf(header.pkt_param1) + " not verified. Score:[" + header.pkt_param2 + "]");
-						case ERR_USER_NOT_FOUND:
-							return new String("User " + Integer.valueOf(header.pkt_param1) + " not found.");							
-						default:
-							return new String("Error: [" + Integer.toHexString((int) buffer[10])  + "]");
-					}
-				case CMD_FP_IDENTIFY:
-					switch(buffer[10])
-					{
-						case ERR_NONE:
-							return new String("User " + header.pkt_param1 + " identified. Score:[" + header.pkt_param2 + "]" );
-						case ERR_IDENTIFY_FAILED:
-							return new String("User not found.");
-						default:
-							return new String("Error: [" + Integer.toHexString((int) buffer[10])  + "]");
-					}
-				case CMD_FP_CAPTURE:
-					switch(buffer[10])
-					{
-						case ERR_NONE:
-							return new String("Capture success" );
-						default:
-							return new String("Error: [" + Integer.toHexString((int) buffer[10])  + "]");
-					}
-				default:
-					return new String("Unknown Response");
-			}
-		}
+			return "Cksm Err: [" + Integer.toHexString(buffer[11] & 0xFF) + "][" + Integer.toHexString(checksum & 0xFF) + "]";
+
+		FMSResponse response = new FMSResponse();
+		response.decode(buffer, 0);
+		return response.describe();
 	}
 	
 	
@@ -0,0 +1,72 @@
+package com.secugen.fmssdk;
+
+import android.graphics.Bitmap;
+
+/**
+ * Keeps one mutable bitmap per (width, height, config) so repeated captures of
+ * the same size can be rendered without allocating a new Bitmap every time.
+ * Not thread safe; use one pool per rendering thread.
+ */
+public class FMSBitmapPool {
+
+    private static final int MAX_ENTRIES = 8;
+
+    private final Bitmap[] mBitmaps = new Bitmap[MAX_ENTRIES];
+    private final long[] mKeys = new long[MAX_ENTRIES];
+    private int mCount = 0;
+    private int mNextEvict = 0;
+
+    private int[] mRow;
+
+    public FMSBitmapPool()
+    {
+    }
+
+    public Bitmap acquire(int width, int height, Bitmap.Config config)
+    {
+        long key = key(width, height, config);
+        for (int i = 0; i < mCount; i++) {
+            if (mKeys[i] == key && mBitmaps[i] != null && !mBitmaps[i].isRecycled())
+                return mBitmaps[i];
+        }
+
+        Bitmap bmp = Bitmap.createBitmap(width, height, config);
+        int slot;
+        if (mCount < MAX_ENTRIES) {
+            slot = mCount++;
+        } else {
+            slot = mNextEvict;
+            mNextEvict = (mNextEvict + 1) % MAX_ENTRIES;
+            if (mBitmaps[slot] != null)
+                mBitmaps[slot].recycle();
+        }
+        mBitmaps[slot] = bmp;
+        mKeys[slot] = key;
+        return bmp;
+    }
+
+    // Scratch row shared by ARGB conversions, grown only when a wider image arrives
+    int[] rowBuffer(int width)
+    {
+        if (mRow == null || mRow.length < width)
+            mRow = new int[width];
+        return mRow;
+    }
+
+    public void clear()
+    {
+        for (int i = 0; i < mCount; i++) {
+            if (mBitmaps[i] != null)
+                mBitmaps[i].recycle();
+            mBitmaps[i] = null;
+        }
+        mCount = 0;
+        mNextEvict = 0;
+        mRow = null;
+    }
+
+    private static long key(int width, int height, Bitmap.Config config)
+    {
+        return ((long) width << 32) | ((long) (height & 0xFFFFFF) << 8) | config.ordinal();
+    }
+}
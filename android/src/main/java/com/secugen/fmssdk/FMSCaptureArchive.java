@@ -0,0 +1,366 @@
+package com.secugen.fmssdk;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Append-only audit archive of captured images.
+ *
+ * Captures are handed to {@link #offer} which never blocks: they go through a
+ * bounded queue to a single writer thread (and are dropped and counted when the
+ * queue is full). The writer appends them to rotating segment files
+ * ("seg-00001.dat") with one gathered FileChannel write per capture, and adds a
+ * fixed-size record to the matching index file ("seg-00001.idx").
+ *
+ * Data record:  int magic, int length, payload
+ * Index record (32 bytes, little endian):
+ *   long timestampMs, long payloadOffset, int length,
+ *   short width, short height, byte flags, byte reserved, byte[6] device MAC
+ *
+ * Segments are read back through {@link Segment}, which memory-maps both files.
+ */
+public class FMSCaptureArchive {
+
+    private static final String TAG = "FMSCaptureArchive";
+
+    public static final int INDEX_RECORD_SIZE = 32;
+    public static final int DATA_PREFIX_SIZE = 8;
+    public static final int FLAG_WSQ = 0x01;
+
+    private static final int MAGIC = 0x534B4741; // "SGKA"
+    private static final int DEFAULT_QUEUE_CAPACITY = 16;
+    private static final long STOP_TIMEOUT_MS = 2000;
+
+    private static final Entry STOP = new Entry(0, null, 0, 0, false, null);
+
+    private final File directory;
+    private final long maxSegmentBytes;
+    private final int maxSegments;
+    private final BlockingQueue<Entry> queue;
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+
+    private final ByteBuffer prefix = ByteBuffer.allocateDirect(DATA_PREFIX_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private final ByteBuffer indexRecord = ByteBuffer.allocateDirect(INDEX_RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private final ByteBuffer[] gather = new ByteBuffer[2];
+
+    private Thread writer;
+    private int segmentNumber;
+    private RandomAccessFile dataFile;
+    private RandomAccessFile indexFile;
+    private FileChannel dataChannel;
+    private FileChannel indexChannel;
+
+    private static final class Entry {
+        final long timestamp;
+        final String device;
+        final int width;
+        final int height;
+        final boolean isWSQ;
+        final byte[] data;
+
+        Entry(long timestamp, String device, int width, int height, boolean isWSQ, byte[] data) {
+            this.timestamp = timestamp;
+            this.device = device;
+            this.width = width;
+            this.height = height;
+            this.isWSQ = isWSQ;
+            this.data = data;
+        }
+    }
+
+    public FMSCaptureArchive(File directory, long maxSegmentBytes, int maxSegments) {
+        this.directory = directory;
+        this.maxSegmentBytes = maxSegmentBytes;
+        this.maxSegments = Math.max(1, maxSegments);
+        this.queue = new ArrayBlockingQueue<>(DEFAULT_QUEUE_CAPACITY);
+    }
+
+    public synchronized void start() {
+        if (writer != null) {
+            return;
+        }
+        writer = new Thread(this::runWriter, "FMSCaptureArchive");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Stops the writer after the queued captures are flushed. Waits at most
+     * STOP_TIMEOUT_MS for each step, so a stuck writer cannot block
+     * the caller; it is interrupted and left to die instead.
+     */
+    public synchronized void stop() {
+        if (writer == null) {
+            return;
+        }
+        try {
+            if (!writer.isAlive() || !queue.offer(STOP, STOP_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                writer.interrupt();
+            }
+            writer.join(STOP_TIMEOUT_MS);
+            if (writer.isAlive()) {
+                Log.w(TAG, "Writer did not stop in time, " + queue.size() + " captures left");
+                writer.interrupt();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        queue.clear();
+        writer = null;
+    }
+
+    /**
+     * Queues a capture for archiving. The array is kept by reference, so the
+     * caller must not modify it afterwards. Returns false if the capture was
+     * dropped because the writer is behind.
+     */
+    public boolean offer(long timestamp, String device, int width, int height, boolean isWSQ, byte[] data) {
+        if (data == null || !queue.offer(new Entry(timestamp, device, width, height, isWSQ, data))) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public long getWrittenCount() {
+        return written.get();
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    private void runWriter() {
+        try {
+            while (true) {
+                Entry entry = queue.take();
+                if (entry == STOP) {
+                    break;
+                }
+                try {
+                    append(entry);
+                    written.incrementAndGet();
+                } catch (IOException | RuntimeException e) {
+                    // Drop this capture but keep the writer alive, or the queue fills for good
+                    Log.e(TAG, "Failed to archive capture", e);
+                    closeSegment();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            closeSegment();
+        }
+    }
+
+    private void append(Entry entry) throws IOException {
+        long recordSize = DATA_PREFIX_SIZE + entry.data.length;
+        if (dataChannel == null || (dataChannel.size() > 0 && dataChannel.size() + recordSize > maxSegmentBytes)) {
+            openNextSegment();
+        }
+
+        long payloadOffset = dataChannel.size() + DATA_PREFIX_SIZE;
+        dataChannel.position(dataChannel.size());
+
+        prefix.clear();
+        prefix.putInt(MAGIC).putInt(entry.data.length).flip();
+        gather[0] = prefix;
+        gather[1] = ByteBuffer.wrap(entry.data);
+        while (gather[1].hasRemaining()) {
+            dataChannel.write(gather);
+        }
+
+        indexRecord.clear();
+        indexRecord.putLong(entry.timestamp)
+                .putLong(payloadOffset)
+                .putInt(entry.data.length)
+                .putShort((short) entry.width)
+                .putShort((short) entry.height)
+                .put((byte) (entry.isWSQ ? FLAG_WSQ : 0))
+                .put((byte) 0);
+        putMacAddress(indexRecord, entry.device);
+        indexRecord.flip();
+        indexChannel.position(indexChannel.size());
+        while (indexRecord.hasRemaining()) {
+            indexChannel.write(indexRecord);
+        }
+        gather[1] = null;
+    }
+
+    private void openNextSegment() throws IOException {
+        closeSegment();
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Failed to create " + directory);
+        }
+
+        if (segmentNumber == 0) {
+            List<File> existing = listSegments(directory);
+            segmentNumber = existing.isEmpty() ? 0 : segmentNumberOf(existing.get(existing.size() - 1));
+        }
+        segmentNumber++;
+
+        dataFile = new RandomAccessFile(dataFileFor(directory, segmentNumber), "rw");
+        indexFile = new RandomAccessFile(indexFileFor(directory, segmentNumber), "rw");
+        dataChannel = dataFile.getChannel();
+        indexChannel = indexFile.getChannel();
+
+        pruneSegments();
+    }
+
+    private void pruneSegments() {
+        List<File> segments = listSegments(directory);
+        for (int i = 0; i < segments.size() - maxSegments; i++) {
+            File data = segments.get(i);
+            File index = indexFileFor(directory, segmentNumberOf(data));
+            if (!data.delete() || (index.exists() && !index.delete())) {
+                Log.w(TAG, "Failed to delete old segment " + data.getName());
+            }
+        }
+    }
+
+    private void closeSegment() {
+        try {
+            if (dataFile != null) {
+                dataFile.close();
+            }
+            if (indexFile != null) {
+                indexFile.close();
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to close segment", e);
+        }
+        dataFile = null;
+        indexFile = null;
+        dataChannel = null;
+        indexChannel = null;
+    }
+
+    private static void putMacAddress(ByteBuffer buffer, String device) {
+        int written = 0;
+        if (device != null) {
+            String[] parts = device.split(":");
+            if (parts.length == 6) {
+                try {
+                    for (String part : parts) {
+                        buffer.put((byte) Integer.parseInt(part, 16));
+                        written++;
+                    }
+                } catch (NumberFormatException e) {
+                    // fall through and pad with zeros
+                }
+            }
+        }
+        for (; written < 6; written++) {
+            buffer.put((byte) 0);
+        }
+    }
+
+    /** Data files of the archive, oldest first. */
+    public static List<File> listSegments(File directory) {
+        File[] files = directory.listFiles((dir, name) -> name.startsWith("seg-") && name.endsWith(".dat"));
+        List<File> segments = new ArrayList<>();
+        if (files != null) {
+            Arrays.sort(files);
+            segments.addAll(Arrays.asList(files));
+        }
+        return segments;
+    }
+
+    private static int segmentNumberOf(File dataFile) {
+        String name = dataFile.getName();
+        try {
+            return Integer.parseInt(name.substring(4, name.length() - 4));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static File dataFileFor(File directory, int number) {
+        return new File(directory, String.format("seg-%05d.dat", number));
+    }
+
+    private static File indexFileFor(File directory, int number) {
+        return new File(directory, String.format("seg-%05d.idx", number));
+    }
+
+    /**
+     * Read-only, memory-mapped view of one archive segment.
+     */
+    public static class Segment {
+        private final MappedByteBuffer data;
+        private final MappedByteBuffer index;
+
+        public Segment(File dataFile) throws IOException {
+            File indexFile = indexFileFor(dataFile.getParentFile(), segmentNumberOf(dataFile));
+            try (RandomAccessFile d = new RandomAccessFile(dataFile, "r");
+                 RandomAccessFile i = new RandomAccessFile(indexFile, "r")) {
+                data = d.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, d.length());
+                long indexLength = i.length() - (i.length() % INDEX_RECORD_SIZE);
+                index = i.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, indexLength);
+                index.order(ByteOrder.LITTLE_ENDIAN);
+            }
+        }
+
+        public int count() {
+            return index.capacity() / INDEX_RECORD_SIZE;
+        }
+
+        public long timestamp(int entry) {
+            return index.getLong(entry * INDEX_RECORD_SIZE);
+        }
+
+        public int width(int entry) {
+            return index.getShort(entry * INDEX_RECORD_SIZE + 20) & 0xFFFF;
+        }
+
+        public int height(int entry) {
+            return index.getShort(entry * INDEX_RECORD_SIZE + 22) & 0xFFFF;
+        }
+
+        public boolean isWSQ(int entry) {
+            return (index.get(entry * INDEX_RECORD_SIZE + 24) & FLAG_WSQ) != 0;
+        }
+
+        public String device(int entry) {
+            int base = entry * INDEX_RECORD_SIZE + 26;
+            StringBuilder sb = new StringBuilder(17);
+            for (int i = 0; i < 6; i++) {
+                if (i > 0) {
+                    sb.append(':');
+                }
+                sb.append(String.format("%02X", index.get(base + i) & 0xFF));
+            }
+            return sb.toString();
+        }
+
+        /** Read-only slice of the capture bytes, backed by the mapped file. */
+        public ByteBuffer payload(int entry) {
+            int base = entry * INDEX_RECORD_SIZE;
+            int offset = (int) index.getLong(base + 8);
+            int length = index.getInt(base + 16);
+            ByteBuffer view = data.duplicate();
+            view.position(offset);
+            view.limit(offset + length);
+            return view.slice().asReadOnlyBuffer();
+        }
+    }
+}
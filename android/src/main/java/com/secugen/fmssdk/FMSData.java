@@ -3,10 +3,15 @@ import static com.secugen.fmssdk.FMSAPI.CMD_FP_CAPTURE;
 
 /**
  * Created by sbyu on 2018-11-19.
+ *
+ * Payload view: d_data is the backing array (usually the received packet),
+ * the payload is d_data[d_offset .. d_offset + d_length). Nothing is copied
+ * until get() is called.
  */
 
 public class FMSData {
     public byte[] d_data;
+    public int d_offset;
     public int d_length;
 
     public void setD_length(int length) {this.d_length = length;}
@@ -18,22 +23,54 @@ public class FMSData {
     }
     public FMSData(byte[] bytes)
     {
+        if (bytes == null || bytes.length < FMSAPI.PACKET_HEADER_SIZE) {
+            // No complete header, so no payload either
+            wrap(bytes, 0, 0);
+            return;
+        }
         FMSHeader header = new FMSHeader(bytes);
+        long length;
         if (header.pkt_command == CMD_FP_CAPTURE)
-            set(bytes, ((header.pkt_datasize2 << 16) | header.pkt_datasize1));
+            length = (header.pkt_datasize1 & 0xFFFF) | (long) (header.pkt_datasize2 & 0xFFFF) << 16;
         else
-            set(bytes, header.pkt_datasize1);
+            length = header.pkt_datasize1 & 0xFFFF;
+        // A packet may carry only the first part of a larger payload
+        wrap(bytes, FMSAPI.PACKET_HEADER_SIZE,
+                (int) Math.min(length, bytes.length - FMSAPI.PACKET_HEADER_SIZE));
     }
 
+    // View over bytes[offset .. offset+length), no copy
+    public FMSData wrap(byte[] bytes, int offset, int length)
+    {
+        d_data = bytes;
+        d_offset = offset;
+        d_length = length;
+        return this;
+    }
+
+    // Copying variant kept for callers that need to own the data
     public void set(byte[] bytes, int length)
     {
         d_length = length;
+        d_offset = 0;
         d_data = new byte[length];
         System.arraycopy(bytes, 12, d_data, 0, length);
     }
 
+    public void copyTo(byte[] dst, int dstOffset, int length)
+    {
+        System.arraycopy(d_data, d_offset, dst, dstOffset, Math.min(length, d_length));
+    }
+
+    // Exact-size payload array; materialized (once) only when the view is partial
     public byte[] get()
     {
+        if (d_data != null && (d_offset != 0 || d_data.length != d_length)) {
+            byte[] copy = new byte[d_length];
+            System.arraycopy(d_data, d_offset, copy, 0, d_length);
+            d_data = copy;
+            d_offset = 0;
+        }
         return d_data;
     }
 }
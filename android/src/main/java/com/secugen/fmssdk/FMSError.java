@@ -0,0 +1,56 @@
+package com.secugen.fmssdk;
+
+/**
+ * Reader error codes (header byte 10) with their descriptions. Lookup by code
+ * goes through a 256-entry table, so decoding a response does not allocate.
+ */
+public enum FMSError
+{
+    NONE(FMSAPI.ERR_NONE, "Normal operation"),
+    FLASH_OPEN(FMSAPI.ERR_FLASH_OPEN, "Flash memory error"),
+    SENSOR_OPEN(FMSAPI.ERR_SENSOR_OPEN, "Sensor initialization failed"),
+    REGISTER_FAILED(FMSAPI.ERR_REGISTER_FAILED, "Fingerprint registration failed"),
+    VERIFY_FAILED(FMSAPI.ERR_VERIFY_FAILED, "Fingerprint verification failed"),
+    ALREADY_REGISTERED_USER(FMSAPI.ERR_ALREADY_REGISTERED_USER, "User ID already exists"),
+    USER_NOT_FOUND(FMSAPI.ERR_USER_NOT_FOUND, "User ID is not found"),
+    TIME_OUT(FMSAPI.ERR_TIME_OUT, "Failed to capture fingerprint in preset time"),
+    DB_FULL(FMSAPI.ERR_DB_FULL, "SDA database is full"),
+    WRONG_USERID(FMSAPI.ERR_WRONG_USERID, "Wrong user ID"),
+    DB_NO_DATA(FMSAPI.ERR_DB_NO_DATA, "SDA database is empty"),
+    FUNCTION_FAIL(FMSAPI.ERR_FUNCTION_FAIL, "Wrong usage of command packet"),
+    INSUFFICIENT_DATA(FMSAPI.ERR_INSUFFICIENT_DATA, "Wrong length value of Extra Data"),
+    FLASH_WRITE_ERROR(FMSAPI.ERR_FLASH_WRITE_ERROR, "Flash write error"),
+    INVALID_PARAM(FMSAPI.ERR_INVALID_PARAM, "Parameter value is not valid"),
+    AUTHENTICATION_FAIL(FMSAPI.ERR_AUTHENTICATION_FAIL, "Master authentication failed"),
+    IDENTIFY_FAILED(FMSAPI.ERR_IDENTIFY_FAILED, "Fingerprint identification failed"),
+    CHECKSUM_ERR(FMSAPI.ERR_CHECKSUM_ERR, "Wrong check sum"),
+    INVALID_FPRECORD(FMSAPI.ERR_INVALID_FPRECORD, "Record format is invalid"),
+    UNKNOWN_COMMAND(FMSAPI.ERR_UNKNOWN_COMMAND, "Unknown command"),
+    OTHER((byte) 0xFE, "Unrecognized error");
+
+    private static final FMSError[] BY_CODE = new FMSError[256];
+
+    static
+    {
+        for (int i = 0; i < BY_CODE.length; i++)
+            BY_CODE[i] = OTHER;
+        for (FMSError e : values()) {
+            if (e != OTHER)
+                BY_CODE[e.code & 0xFF] = e;
+        }
+    }
+
+    public final byte code;
+    public final String description;
+
+    FMSError(byte code, String description)
+    {
+        this.code = code;
+        this.description = description;
+    }
+
+    public static FMSError of(byte code)
+    {
+        return BY_CODE[code & 0xFF];
+    }
+}
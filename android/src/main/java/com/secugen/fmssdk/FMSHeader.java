@@ -135,15 +135,16 @@ public class FMSHeader {
 	
 	public static byte GetCheckSum(byte[] buffer, int buffLength)
 	{
-		byte checksum = 0;
-		Integer checksumCalc;
-		for (int i=0; i< buffLength; ++i)
-		{
-			checksumCalc = new Integer(buffer[i]) + new Integer(checksum);
-			checksumCalc = checksumCalc & 0xFF;
-			checksum = checksumCalc.byteValue();
-		}
-		return checksum;		
+		return GetCheckSum(buffer, 0, buffLength);
+	}
+
+	// 8-bit additive checksum of buffer[offset .. offset+length), no boxing
+	public static byte GetCheckSum(byte[] buffer, int offset, int length)
+	{
+		int sum = 0;
+		for (int i = offset, end = offset + length; i < end; ++i)
+			sum += buffer[i];
+		return (byte) sum;
 	}
 	public void setCheckSum()
 	{
@@ -35,6 +35,7 @@ public class FMSImage {
     public static final int IMG_SIZE_MAX = (IMG_WIDTH_MAX * IMG_HEIGHT_MAX);
 
     private byte[] mPixels;
+    private int mOffset;
     private int buf_length;
     private int mWidth;
     private int mHeight;
@@ -44,53 +45,83 @@ public class FMSImage {
         buf_length = 0;
     }
     public FMSImage(byte[] bytes, int length)
+    {
+        setDimensions(length);
+        set(bytes, mWidth, mHeight);
+        // Only the first length bytes are image data
+        buf_length = Math.min(buf_length, Math.max(length, 0));
+    }
+
+    /**
+     * Picks the sensor dimensions matching a raw image of the given length.
+     */
+    public void setDimensions(int length)
     {
         buf_length = length;
-        if (buf_length == IMG_SIZE_U10 || buf_length == IMG_SIZE_U10/4) {
-            if(buf_length == IMG_SIZE_U10)	{
+        switch (buf_length) {
+            case IMG_SIZE_U10:
                 mWidth = IMG_WIDTH_U10;
                 mHeight = IMG_HEIGHT_U10;
-            } else	{
+                break;
+            case IMG_SIZE_U10/4:
                 mWidth = IMG_WIDTH_U10/2;
                 mHeight = IMG_HEIGHT_U10/2;
-            }
-        } else if (buf_length == IMG_SIZE_UN20 || buf_length == IMG_SIZE_UN20/4) {
-            if(buf_length == IMG_SIZE_UN20)	{
+                break;
+            case IMG_SIZE_UN20:
                 mWidth = IMG_WIDTH_UN20;
                 mHeight = IMG_HEIGHT_UN20;
-            } else	{
+                break;
+            case IMG_SIZE_UN20/4:
                 mWidth = IMG_WIDTH_UN20/2;
                 mHeight = IMG_HEIGHT_UN20/2;
-            }
-        } else if(buf_length==IMG_SIZE2 || buf_length==IMG_SIZE2/4)	{
-            if(buf_length==IMG_SIZE2)	{
+                break;
+            case IMG_SIZE2:
                 mWidth = IMG_WIDTH2;
                 mHeight = IMG_HEIGHT2;
-            } else {
+                break;
+            case IMG_SIZE2/4:
                 mWidth = IMG_WIDTH2/2;
                 mHeight = IMG_HEIGHT2/2;
-            }
-        } else 	{
-            if(buf_length == IMG_SIZE) {
+                break;
+            case IMG_SIZE:
                 mWidth = IMG_WIDTH;
                 mHeight = IMG_HEIGHT;
-            } else	{
+                break;
+            default:
                 mWidth = IMG_WIDTH/2;
                 mHeight = IMG_HEIGHT/2;
-            }
+                break;
         }
+    }
 
-        set(bytes, mWidth, mHeight);
+    /**
+     * Wraps a grayscale buffer whose dimensions are already known (e.g. from the
+     * WSQ decoder info) instead of guessing them from the buffer length.
+     */
+    public FMSImage(byte[] bytes, int width, int height)
+    {
+        set(bytes, 0, width, height);
     }
 
     public void set(byte[] bytes, int width, int height)
     {
-        mPixels = new byte[width*height*4];
-        for (int i = 0; i < buf_length; i++)
-        {
-            mPixels[i*4] = mPixels[i*4+1] = mPixels[i*4+2] = bytes[i];
-            mPixels[i*4+3] = (byte) 0xFF;
-        }
+        set(bytes, 0, width, height);
+    }
+
+    /**
+     * Keeps a reference to the 8-bit grayscale source; pixels are only expanded
+     * when a bitmap is requested. The instance can be re-set for every capture.
+     * A source shorter than width*height renders its bytes and leaves the rest
+     * of the image blank, like the old copying implementation did.
+     */
+    public void set(byte[] bytes, int offset, int width, int height)
+    {
+        mPixels = bytes;
+        mOffset = offset;
+        mWidth = width;
+        mHeight = height;
+        int available = bytes != null ? Math.max(bytes.length - offset, 0) : 0;
+        buf_length = Math.min(width*height, available);
     }
 
     public int getmWidth()
@@ -106,8 +137,62 @@ public class FMSImage {
     public Bitmap get()
     {
         Bitmap bmp = Bitmap.createBitmap(mWidth, mHeight, Bitmap.Config.ARGB_8888);
-        bmp.copyPixelsFromBuffer(ByteBuffer.wrap(mPixels));
+        fillArgb(bmp, new int[mWidth]);
+
+        return bmp;
+    }
+
+    /**
+     * Renders into a pooled ARGB_8888 bitmap of the same dimensions. Once the pool
+     * holds a bitmap of this size, repeated calls do not allocate.
+     */
+    public Bitmap get(FMSBitmapPool pool)
+    {
+        Bitmap bmp = pool.acquire(mWidth, mHeight, Bitmap.Config.ARGB_8888);
+        fillArgb(bmp, pool.rowBuffer(mWidth));
 
         return bmp;
     }
+
+    /**
+     * Copies the grayscale bytes straight into a pooled ALPHA_8 bitmap (one byte
+     * per pixel, no expansion). Draw it with a Paint whose color supplies the tone.
+     */
+    public Bitmap getAlpha8(FMSBitmapPool pool)
+    {
+        Bitmap bmp = pool.acquire(mWidth, mHeight, Bitmap.Config.ALPHA_8);
+        int size = mWidth*mHeight;
+        if (buf_length == size) {
+            bmp.copyPixelsFromBuffer(ByteBuffer.wrap(mPixels, mOffset, size));
+        } else {
+            // Short source: copyPixelsFromBuffer needs the whole bitmap
+            byte[] padded = new byte[size];
+            if (buf_length > 0) {
+                System.arraycopy(mPixels, mOffset, padded, 0, buf_length);
+            }
+            bmp.copyPixelsFromBuffer(ByteBuffer.wrap(padded));
+        }
+
+        return bmp;
+    }
+
+    private void fillArgb(Bitmap bmp, int[] row)
+    {
+        int src = mOffset;
+        int end = mOffset + buf_length;
+        for (int y = 0; y < mHeight; y++)
+        {
+            for (int x = 0; x < mWidth; x++)
+            {
+                if (src < end) {
+                    int g = mPixels[src++] & 0xFF;
+                    row[x] = 0xFF000000 | (g << 16) | (g << 8) | g;
+                } else {
+                    // Past the source: blank, as the old copy left it
+                    row[x] = 0;
+                }
+            }
+            bmp.setPixels(row, 0, mWidth, 0, y, mWidth, 1);
+        }
+    }
 }
@@ -12,6 +12,10 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 
+/**
+ * Saves the last capture to a single Pictures/sgkImage/image.raw file.
+ * For keeping a history of captures use {@link FMSCaptureArchive}.
+ */
 public class FMSImageSave {
     private String path = "sgkImage";
     private String fileName = "image.raw";
@@ -40,36 +44,32 @@ public class FMSImageSave {
     }
 
     public Bitmap Do() {
-        FileInputStream inputStream = null;
-        try {
-            inputStream = new FileInputStream(getFilePath());
-            byte[] imgBuf = new byte[inputStream.available()];
-            inputStream.read(imgBuf);
-
-            FMSImage Img = new FMSImage(imgBuf, inputStream.available());
-            return Img.get();
-        } catch (Exception e) {
-            e.printStackTrace();
-        } finally {
-            try {
-                if (inputStream != null) {
-                    inputStream.close();
-                }
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+        byte[] imgBuf = getImgBuf();
+        if (imgBuf == null) {
+            return null;
         }
-        return null;
+
+        FMSImage Img = new FMSImage(imgBuf, imgBuf.length);
+        return Img.get();
     }
 
     public byte[] getImgBuf() {
         FileInputStream inputStream = null;
         try {
-            inputStream = new FileInputStream(getFilePath());
-            imgSize = inputStream.available();
+            File file = getFilePath();
+            inputStream = new FileInputStream(file);
+            imgSize = (int) file.length();
 
+            // read() may return short, keep reading until the whole file is in
             byte[] imgBuf = new byte[imgSize];
-            inputStream.read(imgBuf);
+            int offset = 0;
+            while (offset < imgSize) {
+                int n = inputStream.read(imgBuf, offset, imgSize - offset);
+                if (n < 0) {
+                    break;
+                }
+                offset += n;
+            }
 
             return imgBuf;
         } catch (Exception e) {
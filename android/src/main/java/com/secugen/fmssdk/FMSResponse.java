@@ -0,0 +1,101 @@
+package com.secugen.fmssdk;
+
+/**
+ * Decoded 12-byte response header. Meant to be reused: {@link #decode} only
+ * overwrites primitive fields, so the receive path does not allocate. Text is
+ * produced by {@link #describe()} only when somebody actually wants it.
+ */
+public class FMSResponse
+{
+    public byte command;
+    public byte errorCode;
+    public FMSError error = FMSError.NONE;
+    public int param1;      // unsigned 16 bit
+    public int param2;      // unsigned 16 bit
+    public int dataSize;    // datasize2:datasize1 as one 32-bit length
+    public boolean checksumOk;
+
+    public FMSResponse()
+    {
+    }
+
+    /**
+     * Decode the header at {@code offset}. Returns false (fields untouched) if
+     * fewer than 12 bytes are available, otherwise true; check
+     * {@link #checksumOk} before trusting the values.
+     */
+    public boolean decode(byte[] buffer, int offset)
+    {
+        if (buffer == null || buffer.length - offset < FMSAPI.PACKET_HEADER_SIZE)
+            return false;
+
+        command = buffer[offset + 1];
+        param1 = (buffer[offset + 2] & 0xFF) | (buffer[offset + 3] & 0xFF) << 8;
+        param2 = (buffer[offset + 4] & 0xFF) | (buffer[offset + 5] & 0xFF) << 8;
+        dataSize = (buffer[offset + 6] & 0xFF)
+                | (buffer[offset + 7] & 0xFF) << 8
+                | (buffer[offset + 8] & 0xFF) << 16
+                | (buffer[offset + 9] & 0xFF) << 24;
+        errorCode = buffer[offset + 10];
+        error = FMSError.of(errorCode);
+        checksumOk = FMSHeader.GetCheckSum(buffer, offset, 11) == buffer[offset + 11];
+        return true;
+    }
+
+    public boolean isOk()
+    {
+        return errorCode == FMSAPI.ERR_NONE;
+    }
+
+    /** Human readable outcome, same wording as {@link FMSAPI#parseResponse}. */
+    public String describe()
+    {
+        if (!checksumOk)
+            return "Cksm Err";
+
+        switch (command)
+        {
+            case FMSAPI.CMD_GET_VERSION:
+                if (!isOk())
+                    return errorText();
+                return "F/W ver " + Integer.toHexString(param1) + "." + Integer.toHexString(param2);
+            case FMSAPI.CMD_FP_REGISTER_START:
+                if (isOk())
+                    return "Capture 1 OK. Place same finger and click Register 2";
+                if (error == FMSError.ALREADY_REGISTERED_USER)
+                    return "User " + param1 + " already registered";
+                return errorText();
+            case FMSAPI.CMD_FP_REGISTER_END:
+                return isOk() ? "Registration was successful" : errorText();
+            case FMSAPI.CMD_FP_DELETE:
+                if (isOk())
+                    return "User " + param1 + " deleted";
+                if (error == FMSError.USER_NOT_FOUND)
+                    return "User " + param1 + " not found";
+                return errorText();
+            case FMSAPI.CMD_FP_VERIFY:
+                if (isOk())
+                    return "User " + param1 + " verified. Score:[" + param2 + "]";
+                if (error == FMSError.VERIFY_FAILED)
+                    return "User " + param1 + " not verified. Score:[" + param2 + "]";
+                if (error == FMSError.USER_NOT_FOUND)
+                    return "User " + param1 + " not found.";
+                return errorText();
+            case FMSAPI.CMD_FP_IDENTIFY:
+                if (isOk())
+                    return "User " + param1 + " identified. Score:[" + param2 + "]";
+                if (error == FMSError.IDENTIFY_FAILED)
+                    return "User not found.";
+                return errorText();
+            case FMSAPI.CMD_FP_CAPTURE:
+                return isOk() ? "Capture success" : errorText();
+            default:
+                return "Unknown Response";
+        }
+    }
+
+    private String errorText()
+    {
+        return "Error: [" + Integer.toHexString(errorCode & 0xFF) + "]";
+    }
+}
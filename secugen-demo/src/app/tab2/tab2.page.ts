@@ -229,8 +229,8 @@ export class Tab2Page implements OnInit, OnDestroy {
     if (result && result !== this.captureResult) {
       this.captureResult = {
         ...result,
-        // Convert raw image data thành PNG base64 để hiển thị
-        pngBase64: this.convertRawToPng(result.imageData, result.width, result.height),
+        // Ưu tiên PNG do native tạo sẵn, nếu không có thì convert raw data
+        pngBase64: result.pngBase64 || this.convertRawToPng(result.imageData, result.width, result.height),
       };
       this.addMessage('Chụp vân tay thành công!', 'success');
     }
@@ -1,8 +1,18 @@
 export interface CaptureOptions {
-  timeoutMs?: number;
+  timeoutMs?: number; // Whole capture deadline (default 30000); on expiry captureProgress reports status 'timeout'
   fullSize?: boolean;
   wsqFormat?: boolean;
   sizeOption?: 'full' | 'half' | 'small' | 'tiny'; // New size options: full=300x400, half=150x200, small=90x120, tiny=60x80
+  previewWidth?: number; // Native preview: max width, aspect ratio kept, never upscaled
+  previewHeight?: number; // Native preview: max height
+  previewFormat?: 'png' | 'jpeg' | 'webp'; // Native preview encoding (default png)
+  previewQuality?: number; // 0-100, used by jpeg/webp (default 80)
+  includeImageData?: boolean; // Set false to skip raw imageData when a preview is requested
+  progressiveRows?: number; // Raw captures only (wsqFormat: false): emit capturePreview every N rows
+  progressiveStep?: number; // Subsampling factor for progressive previews (default 4)
+  minQuality?: number; // 0-100: below this score captureComplete reports success=false, qualityRejected=true
+  preempt?: boolean; // Abandon a capture in progress instead of rejecting with code 'BUSY'
+  burst?: number; // 2-10: capture N frames back to back and resolve with the best decoded one (no captureComplete events); rejects with 'CAPTURE_FAILED' if none decodes
 }
 
 export interface ScanOptions {
@@ -16,18 +26,50 @@ export interface ConnectOptions {
 export interface RegisterOptions {
   userID: number;
   isAdmin?: boolean;
+  timeoutMs?: number; // Rejects with code 'TIMEOUT' if the reader does not answer (default 20000)
+}
+
+export interface EnrollBatchOptions {
+  userIDs: number[];
+  isAdmin?: boolean;
+  timeoutMs?: number; // Per step; a timeout rejects the whole batch with code 'TIMEOUT' (default 20000)
+  stopOnError?: boolean; // Resolve after the first user the reader refuses instead of moving on
+  checkDuplicates?: boolean; // Match each new template against the setGallery() gallery (default true)
+  duplicateThreshold?: number; // Score at or above which a gallery entry counts as the same finger (default 80)
 }
 
 export interface VerifyOptions {
   userID: number;
+  timeoutMs?: number; // Rejects with code 'TIMEOUT' if the reader does not answer (default 20000)
 }
 
 export interface MatchOptions {
   template: string;
+  probeTemplate?: string; // With candidateTemplate: 1:1 match on the phone instead of the reader
+  candidateTemplate?: string;
+  threshold?: number; // Default 80
+  cache?: boolean; // Reuse a result for the same templates from the last 30 s (default true)
+}
+
+export interface TemplateCandidate {
+  id: string | number;
+  subject?: string | number; // Patient the sample belongs to (defaults to id); samples are scored per subject
+  template: string; // Base64 encoded template
+}
+
+export interface GalleryOptions {
+  candidates: TemplateCandidate[];
+}
+
+export interface CaptureAndIdentifyOptions extends CaptureOptions {
+  candidates?: TemplateCandidate[]; // Defaults to the gallery set via setGallery()
+  threshold?: number; // Default 80
+  aggregate?: 'max' | 'fused'; // Per-subject score: best sample (default) or mean of the two best samples
 }
 
 export interface DeleteOptions {
   userID: number;
+  timeoutMs?: number; // Rejects with code 'TIMEOUT' if the reader does not answer (default 20000)
 }
 
 export interface DeviceInfo {
@@ -46,14 +88,37 @@ export interface ConnectionResult {
   deviceInfo?: DeviceInfo;
 }
 
+export interface ImageQuality {
+  score: number; // 0-100 weighted from the three components below
+  coverage: number; // 0-1 share of the image covered by finger area
+  contrast: number; // 0-1 spread between dark ridges and light valleys
+  clarity: number; // 0-1 ridge definition from block variance
+}
+
+export interface BurstSummary {
+  frames: number;
+  bestFrame: number; // 0-based index of the returned frame
+  scores: number[]; // Quality score per frame, -1 when the frame could not be decoded
+  totalMs: number;
+}
+
 export interface CaptureResult {
   success: boolean;
   image?: string;
+  imageData?: string; // Burst captures: the best decoded frame (WSQ-decoded or raw grayscale)
+  size?: number;
   template?: string;
   width?: number;
   height?: number;
   isWSQ?: boolean;
   pngBase64?: string;
+  previewBase64?: string;
+  previewFormat?: 'png' | 'jpeg' | 'webp';
+  previewWidth?: number;
+  previewHeight?: number;
+  quality?: ImageQuality;
+  qualityRejected?: boolean;
+  burst?: BurstSummary; // Only for burst captures
   message?: string;
 }
 
@@ -61,9 +126,199 @@ export interface MatchResult {
   success: boolean;
   score?: number;
   template?: string;
+  cached?: boolean; // Served from the native result cache
+  message?: string;
+}
+
+export interface MatchCacheStatsResult {
+  success: boolean;
+  entries: number;
+  hits: number;
+  misses: number;
+  ttlMs: number;
+}
+
+export interface IdentifyTimings {
+  transferMs: number;
+  decodeMs: number;
+  extractMs?: number;
+  matchMs?: number;
+  totalMs: number;
+}
+
+export interface CaptureAndIdentifyResult {
+  success: boolean;
+  matched: boolean;
+  id?: string | number;
+  score?: number;
+  threshold?: number;
+  matcherCalls?: number; // Templates actually matched (samples after a passing one are skipped)
+  prefiltered?: number; // Candidates held back by the prefilter
+  quality?: ImageQuality;
+  qualityRejected?: boolean;
+  timings: IdentifyTimings;
   message?: string;
 }
 
+export interface GalleryResult {
+  success: boolean;
+  count: number;
+  subjects?: number; // Distinct subjects after grouping (setGallery only)
+  arenaBytes?: number; // Template bytes held natively (setGallery only)
+}
+
+export type PrefilterMode = 'off' | 'skip' | 'defer';
+
+export interface PrefilterOptions {
+  mode: PrefilterMode; // skip: never match held candidates; defer: match them only if nothing passed
+  minRatio?: number; // 0-1: hold candidates whose minutiae count ratio to the probe is below this (default 0.5)
+  auditEvery?: number; // skip mode: every Nth identification also matches held candidates to measure misses
+  resetStats?: boolean;
+}
+
+export interface PrefilterStatsResult {
+  success: boolean;
+  mode: PrefilterMode;
+  minRatio: number;
+  auditEvery: number;
+  identifications: number;
+  unsupported: number; // Probes without an ANSI 378 / ISO 19794-2 header (not filtered)
+  candidates: number;
+  held: number;
+  heldRate: number;
+  deferredScored: number;
+  rescued: number; // defer: identifications only matched thanks to held candidates
+  audited: number;
+  auditedCandidates: number;
+  auditMisses: number; // Held candidates that would have passed the threshold
+  auditFalseRejects: number; // Audited identifications the prefilter turned into a reject
+  falseRejectRate: number; // rescued / identifications (defer) or auditFalseRejects / audited (skip)
+}
+
+export interface ArchiveOptions {
+  enabled?: boolean; // Default true
+  maxSegmentBytes?: number; // Rotate segment files at this size (default 8 MB)
+  maxSegments?: number; // Oldest segments beyond this count are deleted (default 16)
+}
+
+export interface ArchiveResult {
+  success: boolean;
+  enabled: boolean;
+  directory?: string;
+  written?: number; // Captures written by the archive that was just replaced
+  dropped?: number; // Captures dropped because the writer queue was full
+}
+
+export interface TraceOptions {
+  capacityBytes?: number; // Ring buffer size for packet bytes (default 2 MB)
+  maxPackets?: number; // Ring buffer packet slots (default 16384)
+}
+
+export interface TraceResult {
+  success: boolean;
+  packets?: number;
+  path?: string;
+  message?: string;
+}
+
+export interface ReplayOptions {
+  path: string; // File written by dumpTrace()
+  speed?: 'recorded' | 'max'; // Default max
+}
+
+export interface ReplayResult {
+  success: boolean;
+  packets: number;
+  bytes: number;
+  elapsedMs: number;
+  recordedMs: number;
+  throughputKBps: number;
+  illegalTransitions: number; // Session transitions refused during replay
+}
+
+export interface SessionStateResult {
+  state:
+    | 'idle'
+    | 'captureAwaitingHeader'
+    | 'captureReceiving'
+    | 'templateAwaitingHeader'
+    | 'templateReceiving'
+    | 'commandPending';
+  illegalTransitions: number; // Out-of-order packets/transitions refused so far
+}
+
+export interface LinkStatsResult {
+  success: boolean;
+  headers: number; // Response headers checked
+  headerErrors: number; // Headers with a checksum mismatch
+  headerErrorRate: number; // headerErrors / headers
+  readErrors: number; // Failed characteristic reads
+  payloadErrors: number; // Completed transfers that did not decode
+  rereads: number; // Recovery: chunk/header read again
+  commandRetries: number; // Recovery: command re-sent
+  recovered: number;
+  unrecovered: number; // Operations failed with CHECKSUM / READ_FAILED
+}
+
+export type TransferMode = 'notifyRead' | 'pipelined';
+
+export interface TransferModeOptions {
+  mode: TransferMode; // Default notifyRead
+  resetStats?: boolean; // Clear getTransferStats() counters
+}
+
+export interface TransferModeResult {
+  success: boolean;
+  mode: TransferMode;
+}
+
+export interface TransferModeStats {
+  transfers: number;
+  bytes: number;
+  chunks: number;
+  totalMs: number; // Header to last chunk, summed over transfers
+  throughputKBps: number;
+  msPerChunk: number;
+}
+
+export interface TransferStatsResult {
+  success: boolean;
+  mode: TransferMode; // Currently selected mode
+  modes: {
+    notifyRead: TransferModeStats;
+    pipelined: TransferModeStats;
+    streamed: TransferModeStats; // Reader pushed payload in notifications
+  };
+}
+
+export interface DebugEventsOptions {
+  enabled: boolean; // Default false: no dataReceived events
+  sampleEvery?: number; // Forward every Nth stray packet; default 1
+}
+
+export interface DebugEventsResult {
+  success: boolean;
+  enabled: boolean;
+  sampleEvery: number;
+}
+
+export interface StrayPacket {
+  ageMs: number;
+  command: 'header_received' | 'data_received';
+  data: string; // Base64
+}
+
+export interface StrayPacketsResult {
+  success: boolean;
+  packets: StrayPacket[]; // Oldest first, last ~512 packets
+}
+
+export interface CancelCaptureResult {
+  success: boolean;
+  cancelled: boolean; // false when no capture was in progress
+  drainingBytes: number; // Leftover bytes still being read and discarded
+}
+
 export interface ServiceResult {
   success: boolean;
   message: string;
@@ -77,6 +332,49 @@ export interface VersionResult {
   message?: string;
 }
 
+export interface RecordCountResult extends ServiceResult {
+  count?: number; // Templates stored on the reader
+}
+
+export interface AutoIdentifyEvent {
+  success: boolean;
+  message: string;
+  userID?: number;
+  score?: number;
+}
+
+export interface DuplicateCheck {
+  duplicate: boolean;
+  duplicateOf?: string | number; // Gallery id of the matching entry
+  subject?: string | number; // Subject that entry belongs to
+  score?: number;
+  compared: number; // Gallery entries matched before the check stopped
+  elapsedMs: number;
+}
+
+export interface EnrolledTemplate {
+  userID: number;
+  index: number; // Position in userIDs
+  template: string; // Base64 encoded template
+  duplicateCheck?: DuplicateCheck; // Present when the gallery was checked
+}
+
+export interface EnrollBatchResult {
+  success: boolean; // false when any user failed
+  enrolled: EnrolledTemplate[];
+  failed: { userID: number; message: string }[];
+  duplicates: number; // Enrolled templates already present in the gallery
+  totalMs: number;
+}
+
+export interface EnrollProgressEvent {
+  status: 'placeFinger' | 'placeFingerAgain' | 'readingTemplate' | 'failed';
+  userID: number;
+  index: number;
+  total: number;
+  message?: string;
+}
+
 /**
  * SecuGen Unity 20 BLE Plugin Interface
  * Provides comprehensive fingerprint scanner functionality
@@ -127,6 +425,97 @@ export interface SecuGenBLEPlugin {
    */
   capture(options?: CaptureOptions): Promise<CaptureResult>;
 
+  /**
+   * Abort the capture in progress without disconnecting
+   */
+  cancelCapture(): Promise<CancelCaptureResult>;
+
+  /**
+   * Capture, extract a template and identify it natively in one call.
+   * The image never crosses the bridge; only id, score and timings are returned.
+   * Rejects with code 'IMAGE_GEOMETRY' when the image size cannot be determined.
+   */
+  captureAndIdentify(options?: CaptureAndIdentifyOptions): Promise<CaptureAndIdentifyResult>;
+
+  /**
+   * Keep a candidate gallery on the native side for captureAndIdentify
+   */
+  setGallery(options: GalleryOptions): Promise<GalleryResult>;
+
+  /**
+   * Hold back 1:N candidates whose minutiae count is far from the probe's (Android).
+   * Applies to captureAndIdentify and matchTemplates, with or without aggregate.
+   */
+  setPrefilter(options: PrefilterOptions): Promise<{ success: boolean; mode: PrefilterMode }>;
+
+  /**
+   * Prefilter savings and measured false-reject impact (Android)
+   */
+  getPrefilterStats(): Promise<PrefilterStatsResult>;
+
+  /**
+   * Drop the native candidate gallery
+   */
+  clearGallery(): Promise<GalleryResult>;
+
+  /**
+   * Enable/disable the native audit archive of received captures (Android)
+   */
+  configureArchive(options: ArchiveOptions): Promise<ArchiveResult>;
+
+  /**
+   * Record raw GATT packets into a native ring buffer (Android)
+   */
+  startTrace(options?: TraceOptions): Promise<TraceResult>;
+
+  /**
+   * Stop recording; the trace stays available to dumpTrace()
+   */
+  stopTrace(): Promise<TraceResult>;
+
+  /**
+   * Write the recorded packets to a binary trace file
+   */
+  dumpTrace(): Promise<TraceResult>;
+
+  /**
+   * Replay a trace file through the protocol engine while disconnected
+   */
+  replayTrace(options: ReplayOptions): Promise<ReplayResult>;
+
+  /**
+   * Current protocol session state (Android). Operations started while the
+   * reader is busy are rejected with code BUSY.
+   */
+  getSessionState(): Promise<SessionStateResult>;
+
+  /**
+   * Header checksum / read error counters and recovery outcomes (Android)
+   */
+  getLinkStats(): Promise<LinkStatsResult>;
+
+  /**
+   * Opt in to dataReceived events for unhandled packets (Android)
+   */
+  setDebugEvents(options: DebugEventsOptions): Promise<DebugEventsResult>;
+
+  /**
+   * Fetch the unhandled packets kept in the native ring buffer (Android)
+   */
+  getStrayPackets(options?: { clear?: boolean }): Promise<StrayPacketsResult>;
+
+  /**
+   * Select how payload chunks are read (Android). 'pipelined' queues the next
+   * read as soon as the previous one completes; use it only with readers that
+   * keep the next chunk ready.
+   */
+  setTransferMode(options: TransferModeOptions): Promise<TransferModeResult>;
+
+  /**
+   * Measured payload throughput per transfer mode (Android)
+   */
+  getTransferStats(): Promise<TransferStatsResult>;
+
   /**
    * Start fingerprint registration for a user
    */
@@ -137,6 +526,12 @@ export interface SecuGenBLEPlugin {
    */
   completeRegistration(): Promise<ServiceResult>;
 
+  /**
+   * Register start/end and template read for each user, driven natively.
+   * Prompts arrive as 'enrollProgress' events, templates as 'enrollTemplate' events.
+   */
+  enrollBatch(options: EnrollBatchOptions): Promise<EnrollBatchResult>;
+
   /**
    * Verify fingerprint against registered user
    */
@@ -152,6 +547,11 @@ export interface SecuGenBLEPlugin {
    */
   match(options: MatchOptions): Promise<MatchResult>;
 
+  /**
+   * Hits and size of the native match result cache (Android)
+   */
+  getMatchCacheStats(options?: { clear?: boolean }): Promise<MatchCacheStatsResult>;
+
   /**
    * Delete registered fingerprint for a user
    */
@@ -162,6 +562,26 @@ export interface SecuGenBLEPlugin {
    */
   setPowerOffTime(options: { timeoutMinutes: number }): Promise<ServiceResult>;
 
+  /**
+   * Number of records in the reader's database
+   */
+  getRecordCount(): Promise<RecordCountResult>;
+
+  /**
+   * Delete every record in the reader's database
+   */
+  deleteAllRecords(): Promise<ServiceResult>;
+
+  /**
+   * Let the reader identify on its own; results arrive as 'autoIdentify' events
+   */
+  startAutoIdentify(): Promise<ServiceResult>;
+
+  /**
+   * Stop reader-driven identification
+   */
+  stopAutoIdentify(): Promise<ServiceResult>;
+
   /**
    * Add listener for device found events
    */
@@ -187,19 +607,66 @@ export interface SecuGenBLEPlugin {
   ): Promise<any>;
 
   /**
-   * Add listener for data received events
+   * Add listener for unhandled packets; only fires after setDebugEvents({ enabled: true })
    */
   addListener(
     eventName: 'dataReceived',
     listenerFunc: (data: { command: string; data: any }) => void,
   ): Promise<any>;
 
+  /**
+   * Add listener for identification results while auto identify is running
+   */
+  addListener(
+    eventName: 'autoIdentify',
+    listenerFunc: (result: AutoIdentifyEvent) => void,
+  ): Promise<any>;
+
+  /**
+   * Add listener for enrollBatch prompts
+   */
+  addListener(
+    eventName: 'enrollProgress',
+    listenerFunc: (progress: EnrollProgressEvent) => void,
+  ): Promise<any>;
+
+  /**
+   * Add listener for templates produced by enrollBatch
+   */
+  addListener(
+    eventName: 'enrollTemplate',
+    listenerFunc: (template: EnrolledTemplate) => void,
+  ): Promise<any>;
+
   /**
    * Add listener for capture progress events
    */
   addListener(
     eventName: 'captureProgress',
-    listenerFunc: (progress: { status: string; progress?: number; message: string }) => void,
+    listenerFunc: (progress: {
+      status: string; // ... | 'burstFrame' (one per burst frame, instead of download progress)
+      progress?: number;
+      frame?: number;
+      frames?: number;
+      score?: number;
+      message: string;
+    }) => void,
+  ): Promise<any>;
+
+  /**
+   * Add listener for progressive previews of a raw capture still downloading
+   * (8-bit grayscale, subsampled; only the first `height` of `fullHeight` rows are filled)
+   */
+  addListener(
+    eventName: 'capturePreview',
+    listenerFunc: (preview: {
+      rows: number;
+      totalRows: number;
+      width: number;
+      height: number;
+      fullHeight: number;
+      imageData: string;
+    }) => void,
   ): Promise<any>;
 
   /**
@@ -207,7 +674,22 @@ export interface SecuGenBLEPlugin {
    */
   addListener(
     eventName: 'captureComplete',
-    listenerFunc: (result: { success: boolean; imageData: string; width: number; height: number; isWSQ: boolean; size: number; message: string }) => void,
+    listenerFunc: (result: {
+      success: boolean;
+      imageData?: string;
+      width: number;
+      height: number;
+      isWSQ: boolean;
+      size: number;
+      pngBase64?: string;
+      previewBase64?: string;
+      previewFormat?: 'png' | 'jpeg' | 'webp';
+      previewWidth?: number;
+      previewHeight?: number;
+      quality?: ImageQuality;
+      qualityRejected?: boolean;
+      message: string;
+    }) => void,
   ): Promise<any>;
 
   /**
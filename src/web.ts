@@ -15,6 +15,33 @@ import type {
   MatchOptions,
   DeleteOptions,
   VersionResult,
+  RecordCountResult,
+  CaptureAndIdentifyOptions,
+  CaptureAndIdentifyResult,
+  GalleryOptions,
+  GalleryResult,
+  ArchiveOptions,
+  ArchiveResult,
+  TraceOptions,
+  TraceResult,
+  ReplayOptions,
+  ReplayResult,
+  CancelCaptureResult,
+  SessionStateResult,
+  LinkStatsResult,
+  DebugEventsOptions,
+  DebugEventsResult,
+  StrayPacketsResult,
+  TransferModeOptions,
+  TransferModeResult,
+  TransferModeStats,
+  TransferStatsResult,
+  PrefilterMode,
+  PrefilterOptions,
+  PrefilterStatsResult,
+  MatchCacheStatsResult,
+  EnrollBatchOptions,
+  EnrollBatchResult,
 } from './definitions';
 
 export class SecuGenBLEWeb extends WebPlugin implements SecuGenBLEPlugin {
@@ -78,6 +105,144 @@ export class SecuGenBLEWeb extends WebPlugin implements SecuGenBLEPlugin {
     };
   }
 
+  async cancelCapture(): Promise<CancelCaptureResult> {
+    console.log('SecuGenBLE Web: cancelCapture');
+    return { success: false, cancelled: false, drainingBytes: 0 };
+  }
+
+  async captureAndIdentify(_options?: CaptureAndIdentifyOptions): Promise<CaptureAndIdentifyResult> {
+    console.log('SecuGenBLE Web: captureAndIdentify');
+    return {
+      success: false,
+      matched: false,
+      timings: { transferMs: 0, decodeMs: 0, totalMs: 0 },
+      message: 'Not supported on web',
+    };
+  }
+
+  async setPrefilter(_options: PrefilterOptions): Promise<{ success: boolean; mode: PrefilterMode }> {
+    console.log('SecuGenBLE Web: setPrefilter');
+    return { success: false, mode: 'off' };
+  }
+
+  async getPrefilterStats(): Promise<PrefilterStatsResult> {
+    console.log('SecuGenBLE Web: getPrefilterStats');
+    return {
+      success: false,
+      mode: 'off',
+      minRatio: 0.5,
+      auditEvery: 0,
+      identifications: 0,
+      unsupported: 0,
+      candidates: 0,
+      held: 0,
+      heldRate: 0,
+      deferredScored: 0,
+      rescued: 0,
+      audited: 0,
+      auditedCandidates: 0,
+      auditMisses: 0,
+      auditFalseRejects: 0,
+      falseRejectRate: 0,
+    };
+  }
+
+  async setGallery(_options: GalleryOptions): Promise<GalleryResult> {
+    console.log('SecuGenBLE Web: setGallery');
+    return { success: false, count: 0 };
+  }
+
+  async clearGallery(): Promise<GalleryResult> {
+    console.log('SecuGenBLE Web: clearGallery');
+    return { success: false, count: 0 };
+  }
+
+  async configureArchive(_options: ArchiveOptions): Promise<ArchiveResult> {
+    console.log('SecuGenBLE Web: configureArchive');
+    return { success: false, enabled: false };
+  }
+
+  async startTrace(_options?: TraceOptions): Promise<TraceResult> {
+    console.log('SecuGenBLE Web: startTrace');
+    return { success: false, message: 'Not supported on web' };
+  }
+
+  async stopTrace(): Promise<TraceResult> {
+    console.log('SecuGenBLE Web: stopTrace');
+    return { success: false, message: 'Not supported on web' };
+  }
+
+  async dumpTrace(): Promise<TraceResult> {
+    console.log('SecuGenBLE Web: dumpTrace');
+    return { success: false, message: 'Not supported on web' };
+  }
+
+  async replayTrace(_options: ReplayOptions): Promise<ReplayResult> {
+    console.log('SecuGenBLE Web: replayTrace');
+    return {
+      success: false,
+      packets: 0,
+      bytes: 0,
+      elapsedMs: 0,
+      recordedMs: 0,
+      throughputKBps: 0,
+      illegalTransitions: 0,
+    };
+  }
+
+  async getSessionState(): Promise<SessionStateResult> {
+    console.log('SecuGenBLE Web: getSessionState');
+    return { state: 'idle', illegalTransitions: 0 };
+  }
+
+  async getLinkStats(): Promise<LinkStatsResult> {
+    console.log('SecuGenBLE Web: getLinkStats');
+    return {
+      success: false,
+      headers: 0,
+      headerErrors: 0,
+      headerErrorRate: 0,
+      readErrors: 0,
+      payloadErrors: 0,
+      rereads: 0,
+      commandRetries: 0,
+      recovered: 0,
+      unrecovered: 0,
+    };
+  }
+
+  async setDebugEvents(options: DebugEventsOptions): Promise<DebugEventsResult> {
+    console.log('SecuGenBLE Web: setDebugEvents');
+    return { success: false, enabled: options.enabled, sampleEvery: options.sampleEvery ?? 1 };
+  }
+
+  async getStrayPackets(_options?: { clear?: boolean }): Promise<StrayPacketsResult> {
+    console.log('SecuGenBLE Web: getStrayPackets');
+    return { success: false, packets: [] };
+  }
+
+  async setTransferMode(options: TransferModeOptions): Promise<TransferModeResult> {
+    console.log('SecuGenBLE Web: setTransferMode');
+    return { success: false, mode: options.mode };
+  }
+
+  async getTransferStats(): Promise<TransferStatsResult> {
+    console.log('SecuGenBLE Web: getTransferStats');
+    const empty: TransferModeStats = {
+      transfers: 0,
+      bytes: 0,
+      chunks: 0,
+      totalMs: 0,
+      throughputKBps: 0,
+      msPerChunk: 0,
+    };
+    return {
+      success: false,
+      mode: 'notifyRead',
+      modes: { notifyRead: empty, pipelined: empty, streamed: empty },
+    };
+  }
+
   async register(_options: RegisterOptions): Promise<ServiceResult> {
     console.log('SecuGenBLE Web: register');
     return {
@@ -94,6 +259,11 @@ export class SecuGenBLEWeb extends WebPlugin implements SecuGenBLEPlugin {
     };
   }
 
+  async enrollBatch(_options: EnrollBatchOptions): Promise<EnrollBatchResult> {
+    console.log('SecuGenBLE Web: enrollBatch');
+    return { success: false, enrolled: [], failed: [], duplicates: 0, totalMs: 0 };
+  }
+
   async verify(_options: VerifyOptions): Promise<MatchResult> {
     console.log('SecuGenBLE Web: verify');
     return {
@@ -118,6 +288,11 @@ export class SecuGenBLEWeb extends WebPlugin implements SecuGenBLEPlugin {
     };
   }
 
+  async getMatchCacheStats(_options?: { clear?: boolean }): Promise<MatchCacheStatsResult> {
+    console.log('SecuGenBLE Web: getMatchCacheStats');
+    return { success: false, entries: 0, hits: 0, misses: 0, ttlMs: 0 };
+  }
+
   async deleteFingerprint(_options: DeleteOptions): Promise<ServiceResult> {
     console.log('SecuGenBLE Web: deleteFingerprint');
     return {
@@ -134,6 +309,38 @@ export class SecuGenBLEWeb extends WebPlugin implements SecuGenBLEPlugin {
     };
   }
 
+  async getRecordCount(): Promise<RecordCountResult> {
+    console.log('SecuGenBLE Web: getRecordCount');
+    return {
+      success: false,
+      message: 'Not supported on web',
+    };
+  }
+
+  async deleteAllRecords(): Promise<ServiceResult> {
+    console.log('SecuGenBLE Web: deleteAllRecords');
+    return {
+      success: false,
+      message: 'Not supported on web',
+    };
+  }
+
+  async startAutoIdentify(): Promise<ServiceResult> {
+    console.log('SecuGenBLE Web: startAutoIdentify');
+    return {
+      success: false,
+      message: 'Not supported on web',
+    };
+  }
+
+  async stopAutoIdentify(): Promise<ServiceResult> {
+    console.log('SecuGenBLE Web: stopAutoIdentify');
+    return {
+      success: false,
+      message: 'Not supported on web',
+    };
+  }
+
   /**
    * Handle data received from device (internal use)
    */